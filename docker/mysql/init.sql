@@ -42,14 +42,66 @@ CREATE TABLE IF NOT EXISTS `zero_tiny`.`file_info`
     `type`        VARCHAR(128)    NOT NULL COMMENT '文件类型',
     `size`        BIGINT UNSIGNED NOT NULL COMMENT '文件大小',
     `path`        VARCHAR(16)     NOT NULL COMMENT '文件路径',
+    `hash`        CHAR(64)                 DEFAULT NULL COMMENT 'SHA-256 摘要',
+    `store`       VARCHAR(16)              DEFAULT NULL COMMENT '存储方式：NULL 按 path/name 存储，blob 内容寻址存储',
     `create_time` DATETIME        NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     `update_time` DATETIME        NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '修改时间',
     `valid`       BOOLEAN         NOT NULL DEFAULT TRUE COMMENT '是否有效：TRUE 有效，FALSE 无效',
     `version`     BIGINT UNSIGNED NOT NULL DEFAULT 0 COMMENT '版本号',
     PRIMARY KEY (`id`),
     UNIQUE KEY `code` (`code`),
+    KEY `hash` (`hash`),
+    KEY `path` (`path`, `name`),
+    KEY `valid` (`valid`, `id`),
     KEY `create_time` (`create_time`)
 ) ENGINE = InnoDB
   DEFAULT CHARSET = utf8mb4
   COLLATE = utf8mb4_bin
     COMMENT ='文件信息';
+
+CREATE TABLE IF NOT EXISTS `zero_tiny`.`file_blob`
+(
+    `hash`        CHAR(64)        NOT NULL COMMENT 'SHA-256 摘要',
+    `size`        BIGINT UNSIGNED NOT NULL COMMENT '文件大小',
+    `refs`        BIGINT UNSIGNED NOT NULL DEFAULT 0 COMMENT '引用计数',
+    `create_time` DATETIME        NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` DATETIME        NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '修改时间',
+    PRIMARY KEY (`hash`),
+    KEY `refs` (`refs`)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = utf8mb4
+  COLLATE = utf8mb4_bin
+    COMMENT ='文件数据块';
+
+CREATE TABLE IF NOT EXISTS `zero_tiny`.`file_pack`
+(
+    `id`          VARCHAR(128)    NOT NULL COMMENT '存储 key',
+    `segment`     INT UNSIGNED    NOT NULL COMMENT '段文件序号',
+    `position`    BIGINT UNSIGNED NOT NULL COMMENT '段文件内的偏移量',
+    `length`      BIGINT UNSIGNED NOT NULL COMMENT '长度',
+    `create_time` DATETIME        NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` DATETIME        NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '修改时间',
+    `valid`       BOOLEAN         NOT NULL DEFAULT TRUE COMMENT '是否有效：TRUE 有效，FALSE 无效',
+    PRIMARY KEY (`id`),
+    KEY `segment` (`segment`, `valid`)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = utf8mb4
+  COLLATE = utf8mb4_bin
+    COMMENT ='文件打包存储索引';
+
+CREATE TABLE IF NOT EXISTS `zero_tiny`.`file_task`
+(
+    `id`          VARCHAR(32)      NOT NULL COMMENT 'FileInfo.id',
+    `status`      TINYINT UNSIGNED NOT NULL DEFAULT 0 COMMENT '状态：0 待处理，1 处理中，2 失败',
+    `done`        VARCHAR(255)              DEFAULT NULL COMMENT '已完成的处理器，逗号分隔',
+    `attempts`    INT UNSIGNED     NOT NULL DEFAULT 0 COMMENT '失败次数',
+    `next_time`   DATETIME         NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '下次处理时间',
+    `error`       VARCHAR(512)              DEFAULT NULL COMMENT '最近一次失败的原因',
+    `create_time` DATETIME         NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` DATETIME         NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '修改时间',
+    PRIMARY KEY (`id`),
+    KEY `status` (`status`, `next_time`)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = utf8mb4
+  COLLATE = utf8mb4_bin
+    COMMENT ='文件处理任务';
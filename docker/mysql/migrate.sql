@@ -0,0 +1,101 @@
+-- 升级已有的数据库到 init.sql 的结构，可以重复执行
+-- mysql -uroot -p < migrate.sql
+-- MySQL 不支持 ADD COLUMN / ADD INDEX IF NOT EXISTS，先查询 information_schema 再执行
+
+SET NAMES utf8mb4;
+
+USE `zero_tiny`;
+
+DROP PROCEDURE IF EXISTS `zero_tiny`.`migrate_add_column`;
+DROP PROCEDURE IF EXISTS `zero_tiny`.`migrate_add_index`;
+
+DELIMITER $$
+
+CREATE PROCEDURE `zero_tiny`.`migrate_add_column`(IN t VARCHAR(64), IN c VARCHAR(64), IN d VARCHAR(512))
+BEGIN
+    IF NOT EXISTS (SELECT 1
+                   FROM `information_schema`.`COLUMNS`
+                   WHERE `TABLE_SCHEMA` = 'zero_tiny'
+                     AND `TABLE_NAME` = t
+                     AND `COLUMN_NAME` = c) THEN
+        SET @ddl = CONCAT('ALTER TABLE `zero_tiny`.`', t, '` ADD COLUMN `', c, '` ', d);
+        PREPARE stmt FROM @ddl;
+        EXECUTE stmt;
+        DEALLOCATE PREPARE stmt;
+    END IF;
+END $$
+
+CREATE PROCEDURE `zero_tiny`.`migrate_add_index`(IN t VARCHAR(64), IN i VARCHAR(64), IN d VARCHAR(512))
+BEGIN
+    IF NOT EXISTS (SELECT 1
+                   FROM `information_schema`.`STATISTICS`
+                   WHERE `TABLE_SCHEMA` = 'zero_tiny'
+                     AND `TABLE_NAME` = t
+                     AND `INDEX_NAME` = i) THEN
+        SET @ddl = CONCAT('ALTER TABLE `zero_tiny`.`', t, '` ADD ', d);
+        PREPARE stmt FROM @ddl;
+        EXECUTE stmt;
+        DEALLOCATE PREPARE stmt;
+    END IF;
+END $$
+
+DELIMITER ;
+
+-- file_info：摘要和存储方式
+CALL `zero_tiny`.`migrate_add_column`('file_info', 'hash', 'CHAR(64) DEFAULT NULL COMMENT ''SHA-256 摘要'' AFTER `path`');
+CALL `zero_tiny`.`migrate_add_column`('file_info', 'store', 'VARCHAR(16) DEFAULT NULL COMMENT ''存储方式：NULL 按 path/name 存储，blob 内容寻址存储'' AFTER `hash`');
+
+-- file_info：按摘要查找、清理孤儿文件、按 id 分页扫描有效文件
+CALL `zero_tiny`.`migrate_add_index`('file_info', 'hash', 'KEY `hash` (`hash`)');
+CALL `zero_tiny`.`migrate_add_index`('file_info', 'path', 'KEY `path` (`path`, `name`)');
+CALL `zero_tiny`.`migrate_add_index`('file_info', 'valid', 'KEY `valid` (`valid`, `id`)');
+
+DROP PROCEDURE IF EXISTS `zero_tiny`.`migrate_add_column`;
+DROP PROCEDURE IF EXISTS `zero_tiny`.`migrate_add_index`;
+
+CREATE TABLE IF NOT EXISTS `zero_tiny`.`file_blob`
+(
+    `hash`        CHAR(64)        NOT NULL COMMENT 'SHA-256 摘要',
+    `size`        BIGINT UNSIGNED NOT NULL COMMENT '文件大小',
+    `refs`        BIGINT UNSIGNED NOT NULL DEFAULT 0 COMMENT '引用计数',
+    `create_time` DATETIME        NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` DATETIME        NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '修改时间',
+    PRIMARY KEY (`hash`),
+    KEY `refs` (`refs`)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = utf8mb4
+  COLLATE = utf8mb4_bin
+    COMMENT ='文件数据块';
+
+CREATE TABLE IF NOT EXISTS `zero_tiny`.`file_pack`
+(
+    `id`          VARCHAR(128)    NOT NULL COMMENT '存储 key',
+    `segment`     INT UNSIGNED    NOT NULL COMMENT '段文件序号',
+    `position`    BIGINT UNSIGNED NOT NULL COMMENT '段文件内的偏移量',
+    `length`      BIGINT UNSIGNED NOT NULL COMMENT '长度',
+    `create_time` DATETIME        NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` DATETIME        NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '修改时间',
+    `valid`       BOOLEAN         NOT NULL DEFAULT TRUE COMMENT '是否有效：TRUE 有效，FALSE 无效',
+    PRIMARY KEY (`id`),
+    KEY `segment` (`segment`, `valid`)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = utf8mb4
+  COLLATE = utf8mb4_bin
+    COMMENT ='文件打包存储索引';
+
+CREATE TABLE IF NOT EXISTS `zero_tiny`.`file_task`
+(
+    `id`          VARCHAR(32)      NOT NULL COMMENT 'FileInfo.id',
+    `status`      TINYINT UNSIGNED NOT NULL DEFAULT 0 COMMENT '状态：0 待处理，1 处理中，2 失败',
+    `done`        VARCHAR(255)              DEFAULT NULL COMMENT '已完成的处理器，逗号分隔',
+    `attempts`    INT UNSIGNED     NOT NULL DEFAULT 0 COMMENT '失败次数',
+    `next_time`   DATETIME         NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '下次处理时间',
+    `error`       VARCHAR(512)              DEFAULT NULL COMMENT '最近一次失败的原因',
+    `create_time` DATETIME         NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` DATETIME         NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '修改时间',
+    PRIMARY KEY (`id`),
+    KEY `status` (`status`, `next_time`)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = utf8mb4
+  COLLATE = utf8mb4_bin
+    COMMENT ='文件处理任务';
@@ -2,10 +2,12 @@ package run.ice.zero.server;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * @author DaoDao
  */
+@EnableScheduling
 @SpringBootApplication
 public class ServerApplication {
 
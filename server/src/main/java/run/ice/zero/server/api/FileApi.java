@@ -9,10 +9,10 @@ import org.springframework.web.service.annotation.HttpExchange;
 import org.springframework.web.service.annotation.PostExchange;
 import run.ice.zero.server.constant.AppConstant;
 import run.ice.zero.server.constant.ServerConstant;
+import run.ice.zero.server.model.Ok;
 import run.ice.zero.server.model.Request;
 import run.ice.zero.server.model.Response;
-import run.ice.zero.server.model.file.FileData;
-import run.ice.zero.server.model.file.FileParam;
+import run.ice.zero.server.model.file.*;
 
 /**
  * @author DaoDao
@@ -26,4 +26,29 @@ public interface FileApi {
     @PostExchange(url = "file-info")
     Response<FileData> info(@RequestBody @Valid Request<FileParam> request);
 
+    @Operation(summary = "批量查询文件信息", description = "传入多个文件 id 和 code，一次查询多个文件信息")
+    @SecurityRequirement(name = ServerConstant.BEARER_TOKEN)
+    @PostExchange(url = "file-info-batch")
+    Response<FileBatchData> infoBatch(@RequestBody @Valid Request<FileBatchParam> request);
+
+    @Operation(summary = "分片上传初始化", description = "传入源文件名和文件大小，创建上传会话，返回分片大小和分片数量")
+    @SecurityRequirement(name = ServerConstant.BEARER_TOKEN)
+    @PostExchange(url = "file-upload-init")
+    Response<UploadData> uploadInit(@RequestBody @Valid Request<UploadInit> request);
+
+    @Operation(summary = "分片上传状态", description = "传入上传会话 ID，查询已上传的分片，用于断点续传")
+    @SecurityRequirement(name = ServerConstant.BEARER_TOKEN)
+    @PostExchange(url = "file-upload-status")
+    Response<UploadData> uploadStatus(@RequestBody @Valid Request<UploadParam> request);
+
+    @Operation(summary = "分片上传完成", description = "所有分片上传完成后，合并为正式文件，返回文件信息")
+    @SecurityRequirement(name = ServerConstant.BEARER_TOKEN)
+    @PostExchange(url = "file-upload-complete")
+    Response<FileData> uploadComplete(@RequestBody @Valid Request<UploadParam> request);
+
+    @Operation(summary = "分片上传取消", description = "取消上传会话，删除已上传的数据")
+    @SecurityRequirement(name = ServerConstant.BEARER_TOKEN)
+    @PostExchange(url = "file-upload-abort")
+    Response<Ok> uploadAbort(@RequestBody @Valid Request<UploadParam> request);
+
 }
@@ -3,8 +3,10 @@ package run.ice.zero.server.config;
 import lombok.Data;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
 
 import java.time.Duration;
+import java.util.List;
 
 /**
  * @author DaoDao
@@ -22,7 +24,278 @@ public class AppConfig {
     @Value("${app.token-duration:P7D}")
     private Duration tokenDuration;
 
+    /**
+     * 节点编号 0 ~ 255，多个实例必须不同，用于生成文件 ID
+     */
+    @Value("${app.node-id:0}")
+    private Integer nodeId;
+
+    /**
+     * 进程内近缓存（用户、文件信息）每个命名空间的最大条目数，0 表示不启用
+     */
+    @Value("${app.cache.local-size:10000}")
+    private Integer cacheLocalSize;
+
+    /**
+     * 近缓存过期时间，其它实例的失效通知丢失时的最长不一致时间
+     */
+    @Value("${app.cache.local-ttl:PT1M}")
+    private Duration cacheLocalTtl;
+
+    /**
+     * 缓存未命中时通过 Redis 租约保证多个实例中只有一个加载同一个 key，其它实例等待
+     */
+    @Value("${app.cache.lease:false}")
+    private Boolean cacheLease;
+
+    /**
+     * 租约有效期，也是等待其它实例加载的最长时间
+     */
+    @Value("${app.cache.lease-timeout:PT3S}")
+    private Duration cacheLeaseTimeout;
+
+    /**
+     * 提前刷新系数（XFetch 的 beta），越大越早刷新，0 表示不提前刷新
+     */
+    @Value("${app.cache.early-refresh:1.0}")
+    private Double cacheEarlyRefresh;
+
+    /**
+     * 不存在的记录（墓碑）的缓存时间，0 表示不缓存
+     */
+    @Value("${app.cache.tombstone-ttl:PT1M}")
+    private Duration cacheTombstoneTtl;
+
+    /**
+     * 使用布隆过滤器记录已存在的文件 id 和用户 id，过滤器判断不存在时不查询数据库
+     */
+    @Value("${app.cache.bloom:false}")
+    private Boolean cacheBloom;
+
+    /**
+     * 布隆过滤器预计元素数（每个命名空间）
+     */
+    @Value("${app.cache.bloom-expected:1000000}")
+    private Long cacheBloomExpected;
+
+    /**
+     * 布隆过滤器误判率
+     */
+    @Value("${app.cache.bloom-fpp:0.01}")
+    private Double cacheBloomFpp;
+
+    /**
+     * 布隆过滤器每次重新读取上次读取开始之前这段时间内创建的记录，
+     * 需要大于写入事务的最长时间加上实例之间的时钟偏差，晚提交的记录才不会漏掉
+     */
+    @Value("${app.cache.bloom-overlap:PT5M}")
+    private Duration cacheBloomOverlap;
+
     @Value("${app.file.path:/data/file/}")
     private String filePath;
 
+    /**
+     * 新上传文件使用的存储：local、pack、s3
+     */
+    @Value("${app.file.store:local}")
+    private String fileStore;
+
+    /**
+     * 打包存储的段文件大小上限
+     */
+    @Value("${app.file.pack-segment-size:1GB}")
+    private DataSize filePackSegmentSize;
+
+    /**
+     * 小于该大小的文件写入打包存储，0 表示不启用
+     */
+    @Value("${app.file.pack-threshold:0B}")
+    private DataSize filePackThreshold;
+
+    /**
+     * 段文件有效数据占比低于该值时压缩
+     */
+    @Value("${app.file.pack-compact-ratio:0.5}")
+    private Double filePackCompactRatio;
+
+    /**
+     * 图片变体尺寸（最长边），为空时不生成变体
+     */
+    @Value("${app.file.image-sizes:128,512}")
+    private List<Integer> fileImageSizes;
+
+    /**
+     * 预览图片时输出水印图
+     */
+    @Value("${app.file.mark:false}")
+    private Boolean fileMark;
+
+    /**
+     * 水印文字
+     */
+    @Value("${app.file.mark-text:${spring.application.name:zero}}")
+    private String fileMarkText;
+
+    /**
+     * 生成水印图的线程数
+     */
+    @Value("${app.file.mark-threads:1}")
+    private Integer fileMarkThreads;
+
+    /**
+     * 生成水印图的队列长度，队列已满时拒绝
+     */
+    @Value("${app.file.mark-queue:100}")
+    private Integer fileMarkQueue;
+
+    /**
+     * 可压缩的文件预先压缩，按 Accept-Encoding 输出 gzip
+     */
+    @Value("${app.file.gzip:true}")
+    private Boolean fileGzip;
+
+    /**
+     * 小于该大小的文件不压缩
+     */
+    @Value("${app.file.gzip-min-size:1KB}")
+    private DataSize fileGzipMinSize;
+
+    /**
+     * 上传后扫描恶意文件
+     */
+    @Value("${app.file.scan:true}")
+    private Boolean fileScan;
+
+    /**
+     * 上传后处理任务的并行数
+     */
+    @Value("${app.file.task-threads:2}")
+    private Integer fileTaskThreads;
+
+    /**
+     * 上传后处理任务的最大失败次数，超过后不再重试
+     */
+    @Value("${app.file.task-retry:5}")
+    private Integer fileTaskRetry;
+
+    /**
+     * 上传后处理任务的重试间隔，每次失败后加倍
+     */
+    @Value("${app.file.task-backoff:PT10S}")
+    private Duration fileTaskBackoff;
+
+    /**
+     * 容器支持时使用 sendfile 零拷贝输出文件
+     */
+    @Value("${app.file.zero-copy:true}")
+    private Boolean fileZeroCopy;
+
+    /**
+     * 热点文件缓存（堆外内存）容量，0 表示不启用
+     */
+    @Value("${app.file.hot-cache-size:64MB}")
+    private DataSize fileHotCacheSize;
+
+    /**
+     * 可以进入热点缓存的最大文件
+     */
+    @Value("${app.file.hot-cache-max-file:256KB}")
+    private DataSize fileHotCacheMaxFile;
+
+    /**
+     * 输出文件的总带宽（每秒），0 表示不限速
+     */
+    @Value("${app.file.output-rate:0B}")
+    private DataSize fileOutputRate;
+
+    /**
+     * 每个用户输出文件的带宽（每秒），0 表示不限速
+     */
+    @Value("${app.file.output-user-rate:0B}")
+    private DataSize fileOutputUserRate;
+
+    /**
+     * 小于该大小的文件输出时不限速
+     */
+    @Value("${app.file.output-throttle-min:1MB}")
+    private DataSize fileOutputThrottleMin;
+
+    /**
+     * 非零拷贝输出时使用的直接内存缓冲区大小
+     */
+    @Value("${app.file.buffer-size:256KB}")
+    private DataSize fileBufferSize;
+
+    /**
+     * 内容寻址去重存储，相同内容只保存一份
+     */
+    @Value("${app.file.dedup:false}")
+    private Boolean fileDedup;
+
+    /**
+     * 分片上传默认分片大小
+     */
+    @Value("${app.file.part-size:8MB}")
+    private DataSize filePartSize;
+
+    /**
+     * 分片上传会话有效期，超时未完成的会话由后台清理
+     */
+    @Value("${app.file.upload-expire:P1D}")
+    private Duration fileUploadExpire;
+
+    /**
+     * 批量上传时同时写入的文件数
+     */
+    @Value("${app.file.upload-concurrency:4}")
+    private Integer fileUploadConcurrency;
+
+    /**
+     * 批量上传的最大文件数
+     */
+    @Value("${app.file.upload-batch-max:100}")
+    private Integer fileUploadBatchMax;
+
+    /**
+     * 定时回收暂存文件、无效文件和孤儿文件
+     */
+    @Value("${app.file.sweep:true}")
+    private Boolean fileSweep;
+
+    /**
+     * 遍历存储目录的线程数
+     */
+    @Value("${app.file.sweep-threads:2}")
+    private Integer fileSweepThreads;
+
+    /**
+     * 每秒最多遍历的文件数，不大于 0 表示不限速
+     */
+    @Value("${app.file.sweep-rate:500}")
+    private Integer fileSweepRate;
+
+    /**
+     * 与数据库核对的批量大小
+     */
+    @Value("${app.file.sweep-batch:500}")
+    private Integer fileSweepBatch;
+
+    /**
+     * 文件预览的浏览器缓存时间，文件写入后不再变化
+     */
+    @Value("${app.file.cache-max-age:P365D}")
+    private Duration fileCacheMaxAge;
+
+    /**
+     * 是否允许共享缓存（反向代理、CDN）缓存文件预览
+     */
+    @Value("${app.file.cache-public:false}")
+    private Boolean fileCachePublic;
+
+    /**
+     * Cache-Control 是否声明 immutable，缓存有效期内浏览器不再重新验证
+     */
+    @Value("${app.file.cache-immutable:true}")
+    private Boolean fileCacheImmutable;
+
 }
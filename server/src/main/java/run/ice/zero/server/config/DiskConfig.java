@@ -0,0 +1,60 @@
+package run.ice.zero.server.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 多磁盘存储（app.file.store = disk 时启用）
+ * <p>
+ * 新文件按 id 一致性哈希（按权重分配虚拟节点）选择磁盘，FileInfo.store 记录磁盘名称，读取时直接定位。
+ * 增加磁盘只影响之后上传的文件，已有文件不需要迁移。
+ *
+ * @author DaoDao
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.file.disk")
+public class DiskConfig {
+
+    /**
+     * 磁盘根目录
+     */
+    private List<Root> roots = new ArrayList<>();
+
+    /**
+     * 可用空间低于该值时只读
+     */
+    private DataSize minFree = DataSize.ofGigabytes(1L);
+
+    /**
+     * 检查间隔
+     */
+    private Duration checkInterval = Duration.ofSeconds(30L);
+
+    @Data
+    public static class Root {
+
+        /**
+         * 名称，保存在 FileInfo.store 中（disk-{name}），不能修改，最长 11 个字符
+         */
+        private String name;
+
+        /**
+         * 根目录
+         */
+        private String path;
+
+        /**
+         * 权重，按比例分配新文件
+         */
+        private Integer weight = 1;
+
+    }
+
+}
@@ -0,0 +1,51 @@
+package run.ice.zero.server.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.Resource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import run.ice.zero.server.repository.FilePackRepository;
+import run.ice.zero.server.store.DiskRouter;
+import run.ice.zero.server.store.LocalFileStore;
+import run.ice.zero.server.store.PackFileStore;
+import run.ice.zero.server.store.S3FileStore;
+
+/**
+ * 文件存储
+ *
+ * @author DaoDao
+ */
+@Configuration
+public class FileStoreConfig {
+
+    @Resource
+    private AppConfig appConfig;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Bean
+    public LocalFileStore localFileStore() {
+        return new LocalFileStore(appConfig.getFilePath(), meterRegistry);
+    }
+
+    @Bean
+    public PackFileStore packFileStore(FilePackRepository filePackRepository) {
+        return new PackFileStore(appConfig.getFilePath(), appConfig.getFilePackSegmentSize().toBytes(), filePackRepository, meterRegistry);
+    }
+
+    @Bean
+    public DiskRouter diskRouter(DiskConfig diskConfig) {
+        DiskRouter diskRouter = new DiskRouter(diskConfig, meterRegistry);
+        diskRouter.check(diskConfig.getMinFree().toBytes());
+        return diskRouter;
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "app.file.s3", name = "endpoint")
+    public S3FileStore s3FileStore(S3Config s3Config) {
+        return new S3FileStore(s3Config, meterRegistry);
+    }
+
+}
@@ -0,0 +1,34 @@
+package run.ice.zero.server.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * S3 兼容对象存储（AWS S3、MinIO 等）
+ *
+ * @author DaoDao
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.file.s3")
+public class S3Config {
+
+    /**
+     * 服务地址，例如 http://minio:9000 ，为空时不启用
+     */
+    private String endpoint;
+
+    private String region = "us-east-1";
+
+    private String bucket;
+
+    private String accessKey;
+
+    private String secretKey;
+
+    private Duration timeout = Duration.ofSeconds(30L);
+
+}
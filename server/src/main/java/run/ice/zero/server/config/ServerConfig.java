@@ -4,6 +4,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.crypto.factory.PasswordEncoderFactories;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import run.ice.zero.server.util.IdGenerator;
 
 /**
  * @author DaoDao
@@ -16,4 +17,9 @@ public class ServerConfig {
         return PasswordEncoderFactories.createDelegatingPasswordEncoder();
     }
 
+    @Bean
+    public IdGenerator idGenerator(AppConfig appConfig) {
+        return new IdGenerator(appConfig.getNodeId());
+    }
+
 }
@@ -12,4 +12,29 @@ public class CacheConstant {
 
     public static final String FILE_INFO = PREFIX + "file" + DELIMITER + "info" + DELIMITER;
 
+    public static final String FILE_UPLOAD = PREFIX + "file" + DELIMITER + "upload" + DELIMITER;
+
+    /**
+     * 不存在的记录在 L2 中的值（墓碑），旧的读取逻辑把空字符串当作未命中，不会误解析
+     */
+    public static final String TOMBSTONE = "";
+
+    /**
+     * 缓存加载租约，key 为 LEASE + 被加载的 key
+     */
+    public static final String LEASE = PREFIX + "lease" + DELIMITER;
+
+    /**
+     * 近缓存失效通知的 pub/sub 频道，消息为失效的 key，多个 key 以换行分隔
+     */
+    public static final String INVALIDATE = PREFIX + "invalidate";
+
+    /**
+     * 命名空间的简称，用于指标标签：zero:server:file:info: -> file:info
+     */
+    public static String name(String namespace) {
+        String name = namespace.startsWith(PREFIX) ? namespace.substring(PREFIX.length()) : namespace;
+        return name.endsWith(DELIMITER) ? name.substring(0, name.length() - DELIMITER.length()) : name;
+    }
+
 }
@@ -3,25 +3,23 @@ package run.ice.zero.server.controller;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import jakarta.annotation.Resource;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import run.ice.zero.server.api.FileApi;
 import run.ice.zero.server.constant.ServerConstant;
-import run.ice.zero.server.error.AppException;
-import run.ice.zero.server.error.ServerError;
+import run.ice.zero.server.model.Ok;
 import run.ice.zero.server.model.Request;
 import run.ice.zero.server.model.Response;
-import run.ice.zero.server.model.file.FileData;
-import run.ice.zero.server.model.file.FileParam;
+import run.ice.zero.server.model.file.*;
 import run.ice.zero.server.service.FileService;
+import run.ice.zero.server.service.UploadService;
 
-import java.io.File;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.util.List;
 
 @RestController
 public class FileController implements FileApi {
@@ -29,12 +27,21 @@ public class FileController implements FileApi {
     @Resource
     private FileService fileService;
 
+    @Resource
+    private UploadService uploadService;
+
     @Override
     public Response<FileData> info(Request<FileParam> request) {
         FileData data = fileService.info(request.getParam());
         return new Response<>(data);
     }
 
+    @Override
+    public Response<FileBatchData> infoBatch(Request<FileBatchParam> request) {
+        FileBatchData data = fileService.info(request.getParam());
+        return new Response<>(data);
+    }
+
     @SecurityRequirement(name = ServerConstant.BEARER_TOKEN)
     @Operation(summary = "upload 上传文件", description = "使用 multipart/form-data 上传文件，key = file")
     @PostMapping(path = "file-upload", consumes = {MediaType.MULTIPART_FORM_DATA_VALUE})
@@ -43,28 +50,71 @@ public class FileController implements FileApi {
         return new Response<>(data);
     }
 
+    @SecurityRequirement(name = ServerConstant.BEARER_TOKEN)
+    @Operation(summary = "批量上传文件", description = "使用 multipart/form-data 上传多个文件，key = file，可以重复；单个文件失败时在 errors 中返回")
+    @PostMapping(path = "file-upload-batch", consumes = {MediaType.MULTIPART_FORM_DATA_VALUE})
+    public Response<FileUploadData> uploadBatch(@RequestPart(name = "file") List<MultipartFile> multipartFiles) {
+        FileUploadData data = fileService.upload(multipartFiles);
+        return new Response<>(data);
+    }
+
+    @Override
+    public Response<UploadData> uploadInit(Request<UploadInit> request) {
+        UploadData data = uploadService.init(request.getParam());
+        return new Response<>(data);
+    }
+
+    @SecurityRequirement(name = ServerConstant.BEARER_TOKEN)
+    @Operation(summary = "分片上传", description = "body 为分片的原始数据（application/octet-stream），可以并行上传，重复上传会覆盖")
+    @PostMapping(path = "file-upload-part", consumes = {MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public Response<UploadPart> uploadPart(@RequestParam(name = "uploadId") String uploadId,
+                                           @RequestParam(name = "number") Integer number,
+                                           @RequestParam(name = "sha256", required = false) String sha256,
+                                           HttpServletRequest request) throws IOException {
+        UploadPart data = uploadService.part(uploadId, number, sha256, request.getInputStream());
+        return new Response<>(data);
+    }
+
+    @Override
+    public Response<UploadData> uploadStatus(Request<UploadParam> request) {
+        UploadData data = uploadService.status(request.getParam());
+        return new Response<>(data);
+    }
+
+    @Override
+    public Response<FileData> uploadComplete(Request<UploadParam> request) {
+        FileData data = uploadService.complete(request.getParam());
+        return new Response<>(data);
+    }
+
+    @Override
+    public Response<Ok> uploadAbort(Request<UploadParam> request) {
+        uploadService.abort(request.getParam());
+        return Response.ok();
+    }
+
     @SecurityRequirement(name = ServerConstant.BEARER_TOKEN)
     @Operation(summary = "download 下载文件", description = "http response 的 header 中包含文件名称， body 是文件数据流")
     @PostMapping(path = "file-download")
-    public void download(@RequestBody @Valid Request<FileParam> request, HttpServletResponse response) {
-        File file = fileService.download(request.getParam());
-        fileService.output(response, file);
+    public void download(@RequestBody @Valid Request<FileParam> request, HttpServletRequest httpServletRequest, HttpServletResponse response) {
+        fileService.output(httpServletRequest, response, request.getParam(), false);
+    }
+
+    @SecurityRequirement(name = ServerConstant.BEARER_TOKEN)
+    @Operation(summary = "打包下载", description = "传入多个文件 id 和 code，body 是 ZIP 数据流，边读边输出")
+    @PostMapping(path = "file-download-zip")
+    public void downloadZip(@RequestBody @Valid Request<FileBatchParam> request, HttpServletResponse response) {
+        fileService.zip(response, request.getParam());
     }
 
-    @Operation(summary = "view 预览文件", description = "http response 的 header 中包含文件名称， body 是文件数据流")
+    @Operation(summary = "view 预览文件", description = "http response 的 header 中包含文件名称， body 是文件数据流；图片可以使用 size 选择缩略图")
     @GetMapping(path = "file-view")
-    public void view(@RequestParam(name = "id") String id, @RequestParam(name = "code") String code, HttpServletResponse response) {
+    public void view(@RequestParam(name = "id") String id, @RequestParam(name = "code") String code, @RequestParam(name = "size", required = false) Integer size, HttpServletRequest request, HttpServletResponse response) {
         FileParam param = new FileParam();
         param.setId(id);
         param.setCode(code);
-        FileData data = fileService.info(param);
-        if (!code.equals(data.getCode())) {
-            throw new AppException(ServerError.FILE_CODE_ERROR, id + " : " + code);
-        }
-        String name = URLEncoder.encode(data.getOrigin(), StandardCharsets.UTF_8);
-        response.addHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + name + "\"; filename*=utf-8' '" + name);
-        File file = fileService.download(param);
-        fileService.output(response, file);
+        param.setSize(size);
+        fileService.output(request, response, param, true);
     }
 
 }
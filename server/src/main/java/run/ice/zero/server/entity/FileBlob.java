@@ -0,0 +1,63 @@
+package run.ice.zero.server.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.DynamicInsert;
+import org.hibernate.annotations.DynamicUpdate;
+import run.ice.zero.server.model.Serializer;
+
+import java.time.LocalDateTime;
+
+/**
+ * 内容寻址的文件数据块，按 SHA-256 去重存储
+ *
+ * @author DaoDao
+ */
+@Getter
+@Setter
+@Entity
+@DynamicInsert
+@DynamicUpdate
+@Table(schema = "zero_tiny", name = "file_blob")
+public class FileBlob implements Serializer {
+
+    /**
+     * SHA-256 摘要
+     */
+    @Id
+    @Column(name = "hash")
+    private String hash;
+
+    /**
+     * 文件大小
+     */
+    @Column(name = "size")
+    private Long size;
+
+    /**
+     * 引用计数
+     */
+    @Column(name = "refs")
+    private Long refs;
+
+    @Column(name = "create_time")
+    private LocalDateTime createTime;
+
+    @Column(name = "update_time")
+    private LocalDateTime updateTime;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createTime == null) {
+            createTime = LocalDateTime.now();
+        }
+        updateTime = LocalDateTime.now();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updateTime = LocalDateTime.now();
+    }
+
+}
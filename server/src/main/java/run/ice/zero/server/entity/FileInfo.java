@@ -63,6 +63,18 @@ public class FileInfo implements Serializer {
     @Column(name = "path")
     private String path;
 
+    /**
+     * SHA-256 摘要
+     */
+    @Column(name = "hash")
+    private String hash;
+
+    /**
+     * 存储方式：为空表示按 path/name 存储，blob 表示按 hash 内容寻址存储
+     */
+    @Column(name = "store")
+    private String store;
+
     @Column(name = "create_time")
     private LocalDateTime createTime;
 
@@ -0,0 +1,78 @@
+package run.ice.zero.server.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.DynamicInsert;
+import org.hibernate.annotations.DynamicUpdate;
+import run.ice.zero.server.model.Serializer;
+
+import java.time.LocalDateTime;
+
+/**
+ * 打包存储索引：key -> (segment, position, length)
+ *
+ * @author DaoDao
+ */
+@Getter
+@Setter
+@Entity
+@DynamicInsert
+@DynamicUpdate
+@Table(schema = "zero_tiny", name = "file_pack")
+public class FilePack implements Serializer {
+
+    /**
+     * 存储 key
+     */
+    @Id
+    @Column(name = "id")
+    private String id;
+
+    /**
+     * 段文件序号
+     */
+    @Column(name = "segment")
+    private Integer segment;
+
+    /**
+     * 段文件内的偏移量
+     */
+    @Column(name = "position")
+    private Long position;
+
+    /**
+     * 长度
+     */
+    @Column(name = "length")
+    private Long length;
+
+    @Column(name = "create_time")
+    private LocalDateTime createTime;
+
+    @Column(name = "update_time")
+    private LocalDateTime updateTime;
+
+    /**
+     * 是否有效
+     */
+    @Column(name = "valid")
+    private Boolean valid;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createTime == null) {
+            createTime = LocalDateTime.now();
+        }
+        updateTime = LocalDateTime.now();
+        if (valid == null) {
+            valid = true;
+        }
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updateTime = LocalDateTime.now();
+    }
+
+}
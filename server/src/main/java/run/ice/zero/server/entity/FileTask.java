@@ -0,0 +1,105 @@
+package run.ice.zero.server.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.DynamicInsert;
+import org.hibernate.annotations.DynamicUpdate;
+import org.springframework.data.domain.Persistable;
+import run.ice.zero.server.model.Serializer;
+
+import java.time.LocalDateTime;
+
+/**
+ * 上传后处理任务（outbox），与 FileInfo 在同一事务中写入，全部处理完成后删除
+ *
+ * @author DaoDao
+ */
+@Getter
+@Setter
+@Entity
+@DynamicInsert
+@DynamicUpdate
+@Table(schema = "zero_tiny", name = "file_task")
+public class FileTask implements Serializer, Persistable<String> {
+
+    public static final int PENDING = 0;
+
+    public static final int RUNNING = 1;
+
+    public static final int FAILED = 2;
+
+    /**
+     * FileInfo.id
+     */
+    @Id
+    @Column(name = "id")
+    private String id;
+
+    /**
+     * 状态：0 待处理，1 处理中，2 失败（超过重试次数）
+     */
+    @Column(name = "status")
+    private Integer status;
+
+    /**
+     * 已完成的处理器，逗号分隔，重试时跳过
+     */
+    @Column(name = "done")
+    private String done;
+
+    /**
+     * 失败次数
+     */
+    @Column(name = "attempts")
+    private Integer attempts;
+
+    /**
+     * 下次处理时间
+     */
+    @Column(name = "next_time")
+    private LocalDateTime nextTime;
+
+    /**
+     * 最近一次失败的原因
+     */
+    @Column(name = "error")
+    private String error;
+
+    @Column(name = "create_time")
+    private LocalDateTime createTime;
+
+    @Column(name = "update_time")
+    private LocalDateTime updateTime;
+
+    /**
+     * 新建的任务直接插入，不先按 id 查询
+     */
+    @Override
+    public boolean isNew() {
+        return null == createTime;
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        if (createTime == null) {
+            createTime = LocalDateTime.now();
+        }
+        updateTime = LocalDateTime.now();
+        if (status == null) {
+            status = PENDING;
+        }
+        if (attempts == null) {
+            attempts = 0;
+        }
+        if (nextTime == null) {
+            nextTime = createTime;
+        }
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updateTime = LocalDateTime.now();
+    }
+
+}
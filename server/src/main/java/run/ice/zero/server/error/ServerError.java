@@ -21,6 +21,11 @@ public enum ServerError implements ErrorEnum {
     FILE_READ_WRITE_ERROR("1008", "文件读写异常"),
     FILE_CODE_ERROR("1009", "文件编码错误"),
     FILE_NOT_EXIST("1010", "文件不存在"),
+    UPLOAD_NOT_EXIST("1011", "上传会话不存在"),
+    UPLOAD_PART_ERROR("1012", "分片错误"),
+    UPLOAD_INCOMPLETE("1013", "分片未上传完整"),
+    UPLOAD_TOO_MANY("1014", "上传文件数量超过限制"),
+    UPLOAD_BUSY("1015", "上传会话正在处理"),
 
     ;
 
@@ -1,5 +1,6 @@
 package run.ice.zero.server.handler;
 
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.validation.BindingResult;
@@ -27,14 +28,21 @@ public class AppExceptionHandler {
 
     /**
      * 所有异常
+     * <p>
+     * 响应已经开始输出（文件流、ZIP）时不能再写入错误信息，重新抛出，由容器中断连接，客户端能够发现响应不完整。
      *
-     * @param e Exception
+     * @param e        Exception
+     * @param response HttpServletResponse
      * @return Response
+     * @throws Exception 响应已经开始输出时
      */
     @ResponseStatus(HttpStatus.OK)
     @ExceptionHandler(Exception.class)
-    public Response<?> handleException(Exception e) {
+    public Response<?> handleException(Exception e, HttpServletResponse response) throws Exception {
         log.error(e.getMessage(), e);
+        if (response.isCommitted()) {
+            throw e;
+        }
         if (e instanceof AppException) {
             return new Response<>((AppException) e);
         }
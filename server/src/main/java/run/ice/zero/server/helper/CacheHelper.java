@@ -0,0 +1,483 @@
+package run.ice.zero.server.helper;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import run.ice.zero.server.config.AppConfig;
+import run.ice.zero.server.constant.CacheConstant;
+import run.ice.zero.server.model.Serializer;
+import run.ice.zero.server.util.BloomFilter;
+import run.ice.zero.server.util.NearCache;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 两级缓存：进程内近缓存（L1）+ Redis（L2）
+ * <p>
+ * 热点 key 在 L1 命中时不访问 Redis，也不解析 JSON。
+ * - 每个命名空间（CacheConstant 中的 key 前缀）一个 {@link NearCache}，容量和过期时间见 app.cache.local-*
+ * - 失效：删除 Redis 中的 key，失效本实例的 L1，再通过 pub/sub 通知其它实例失效
+ * - 在事务中失效时，提交之后再执行一次，避免其它实例在提交之前从数据库加载旧值
+ * - 通知丢失时（例如订阅连接断开）最长不一致时间为 L1 过期时间
+ * <p>
+ * 防止缓存击穿（{@link #get}）：
+ * - 同一实例中同一个 key 只有一个请求访问 Redis 和数据库，其它请求等待同一个结果
+ * - 可选 Redis 租约（app.cache.lease），多个实例中只有一个加载，其它实例轮询 Redis 等待结果；
+ *   租约的值为随机令牌，释放时比较令牌，加载超过租约时间时不会删除其它实例的租约
+ * - 提前刷新（XFetch）：读取 L2 时同时取剩余过期时间，按加载耗时和随机数决定是否在后台提前刷新，
+ *   热点 key 在过期之前已经刷新。L1 使 L2 的读取间隔达到 L1 过期时间，剩余时间小于该间隔时一定刷新
+ * <p>
+ * 不存在的记录：
+ * - 加载结果为空时在 L1 和 L2 中写入墓碑（app.cache.tombstone-ttl），过期之前不再查询数据库
+ * - 可选布隆过滤器（app.cache.bloom）记录已存在的 id，由 BloomService 从数据库增量构建，
+ *   构建完成之后，L2 未命中并且过滤器判断不存在时直接返回，不查询数据库
+ * - 新增记录时调用 {@link #created}，提交之后清除墓碑、加入过滤器并通知其它实例
+ *
+ * @author DaoDao
+ */
+@Slf4j
+@Component
+public class CacheHelper implements MessageListener {
+
+    private static final String METRIC_REQUESTS = "zero.cache.local.requests";
+    private static final String METRIC_EVICTIONS = "zero.cache.local.evictions";
+    private static final String METRIC_SIZE = "zero.cache.local.size";
+    private static final String METRIC_INVALIDATIONS = "zero.cache.invalidations";
+    private static final String METRIC_LOADS = "zero.cache.loads";
+    private static final String METRIC_BLOOM = "zero.cache.bloom.count";
+
+    /**
+     * 释放租约：值为自己的令牌时才删除，不会删除超时之后其它实例获取的租约
+     */
+    private static final RedisScript<Long> RELEASE = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end", Long.class);
+
+    /**
+     * 等待其它实例加载时轮询 Redis 的间隔
+     */
+    private static final long LEASE_POLL = 20L;
+
+    /**
+     * 加载耗时初始值（纳秒）
+     */
+    private static final long DELTA = TimeUnit.MILLISECONDS.toNanos(10L);
+
+    @Resource
+    private AppConfig appConfig;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, NearCache<?>> caches = new ConcurrentHashMap<>();
+
+    /**
+     * 正在加载的 key
+     */
+    private final Map<String, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+
+    /**
+     * 正在后台刷新的 key
+     */
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 每个命名空间的加载耗时（纳秒，指数移动平均）
+     */
+    private final Map<String, AtomicLong> deltas = new ConcurrentHashMap<>();
+
+    /**
+     * 每个命名空间的墓碑
+     */
+    private final Map<String, NearCache<Boolean>> tombstones = new ConcurrentHashMap<>();
+
+    private final Map<String, BloomFilter> blooms = new ConcurrentHashMap<>();
+
+    /**
+     * 已经完成首次构建的布隆过滤器
+     */
+    private final Set<String> ready = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CacheConstant.INVALIDATE));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 命名空间的近缓存
+     *
+     * @param namespace CacheConstant 中的 key 前缀
+     * @return NearCache
+     */
+    @SuppressWarnings("unchecked")
+    public <T> NearCache<T> cache(String namespace) {
+        return (NearCache<T>) caches.computeIfAbsent(namespace, ns -> {
+            NearCache<T> cache = new NearCache<>(appConfig.getCacheLocalSize(), appConfig.getCacheLocalTtl().toNanos());
+            String name = CacheConstant.name(ns);
+            FunctionCounter.builder(METRIC_REQUESTS, cache, NearCache::hits).tag("namespace", name).tag("result", "hit").register(meterRegistry);
+            FunctionCounter.builder(METRIC_REQUESTS, cache, NearCache::misses).tag("namespace", name).tag("result", "miss").register(meterRegistry);
+            FunctionCounter.builder(METRIC_EVICTIONS, cache, NearCache::evictions).tag("namespace", name).register(meterRegistry);
+            Gauge.builder(METRIC_SIZE, cache, NearCache::size).tag("namespace", name).register(meterRegistry);
+            return cache;
+        });
+    }
+
+    private NearCache<Boolean> tombstones(String namespace) {
+        return tombstones.computeIfAbsent(namespace, ns -> new NearCache<>(appConfig.getCacheLocalSize(),
+                Math.min(appConfig.getCacheLocalTtl().toNanos(), appConfig.getCacheTombstoneTtl().toNanos())));
+    }
+
+    /**
+     * 命名空间的布隆过滤器，没有启用时返回 null
+     *
+     * @param namespace CacheConstant 中的 key 前缀
+     * @return BloomFilter
+     */
+    public BloomFilter bloom(String namespace) {
+        if (!appConfig.getCacheBloom()) {
+            return null;
+        }
+        return blooms.computeIfAbsent(namespace, ns -> {
+            BloomFilter bloom = new BloomFilter(appConfig.getCacheBloomExpected(), appConfig.getCacheBloomFpp());
+            Gauge.builder(METRIC_BLOOM, bloom, BloomFilter::count).tag("namespace", CacheConstant.name(ns)).register(meterRegistry);
+            return bloom;
+        });
+    }
+
+    /**
+     * 布隆过滤器首次构建完成，之后开始用于过滤
+     *
+     * @param namespace CacheConstant 中的 key 前缀
+     */
+    public void ready(String namespace) {
+        if (ready.add(namespace)) {
+            log.info("bloom filter ready: {}, {}", CacheConstant.name(namespace), blooms.get(namespace).count());
+        }
+    }
+
+    /**
+     * 读取：L1 -> L2 -> 数据库，同一个 key 的并发加载合并为一次
+     *
+     * @param namespace CacheConstant 中的 key 前缀
+     * @param id        key 后缀
+     * @param ttl       L2 过期时间
+     * @param parser    JSON -> 对象
+     * @param loader    从数据库加载，不存在时返回 null
+     * @return 不存在时返回 null
+     */
+    public <T extends Serializer> T get(String namespace, String id, Duration ttl, Function<String, T> parser, Supplier<T> loader) {
+        String key = namespace + id;
+        NearCache<T> cache = cache(namespace);
+        T value = cache.get(key);
+        if (null != value) {
+            return value;
+        }
+        NearCache<Boolean> tombstone = tombstones(namespace);
+        if (null != tombstone.get(key)) {
+            return null;
+        }
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = flights.putIfAbsent(key, flight);
+        if (null != existing) {
+            meterRegistry.counter(METRIC_LOADS, "namespace", CacheConstant.name(namespace), "result", "coalesced").increment();
+            return join(existing);
+        }
+        try {
+            long generation = cache.generation(key);
+            long missing = tombstone.generation(key);
+            value = fetch(namespace, key, ttl, parser, loader);
+            if (null != value) {
+                cache.put(key, value, generation);
+            } else if (!appConfig.getCacheTombstoneTtl().isZero()) {
+                tombstone.put(key, Boolean.TRUE, missing);
+            }
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T join(CompletableFuture<Object> future) {
+        try {
+            return (T) future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 读取 L2（同时取剩余过期时间），未命中时加载
+     */
+    private <T extends Serializer> T fetch(String namespace, String key, Duration ttl, Function<String, T> parser, Supplier<T> loader) {
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            byte[] k = key.getBytes(StandardCharsets.UTF_8);
+            connection.stringCommands().get(k);
+            connection.keyCommands().pTtl(k);
+            return null;
+        });
+        String json = (String) results.get(0);
+        if (CacheConstant.TOMBSTONE.equals(json)) {
+            meterRegistry.counter(METRIC_LOADS, "namespace", CacheConstant.name(namespace), "result", "tombstone").increment();
+            return null;
+        }
+        if (null != json) {
+            Long pttl = (Long) results.get(1);
+            if (null != pttl && pttl > 0 && early(namespace, pttl)) {
+                refresh(namespace, key, ttl, loader);
+            }
+            return parser.apply(json);
+        }
+        if (!known(namespace, key.substring(namespace.length()))) {
+            meterRegistry.counter(METRIC_LOADS, "namespace", CacheConstant.name(namespace), "result", "bloom").increment();
+            return null;
+        }
+        if (!appConfig.getCacheLease()) {
+            return load(namespace, key, ttl, loader);
+        }
+        String lease = CacheConstant.LEASE + key;
+        long timeout = appConfig.getCacheLeaseTimeout().toMillis();
+        String token = UUID.randomUUID().toString();
+        if (Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(lease, token, Duration.ofMillis(timeout)))) {
+            try {
+                return load(namespace, key, ttl, loader);
+            } finally {
+                stringRedisTemplate.execute(RELEASE, List.of(lease), token);
+            }
+        }
+        /*
+         * 其它实例正在加载：轮询 Redis，租约释放或者超时后自己加载
+         */
+        meterRegistry.counter(METRIC_LOADS, "namespace", CacheConstant.name(namespace), "result", "lease-wait").increment();
+        long deadline = System.currentTimeMillis() + timeout;
+        while (System.currentTimeMillis() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(LEASE_POLL));
+            json = stringRedisTemplate.opsForValue().get(key);
+            if (null != json) {
+                return CacheConstant.TOMBSTONE.equals(json) ? null : parser.apply(json);
+            }
+            if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(lease))) {
+                break;
+            }
+        }
+        return load(namespace, key, ttl, loader);
+    }
+
+    /**
+     * 从数据库加载并写入 L2，记录耗时
+     */
+    private <T extends Serializer> T load(String namespace, String key, Duration ttl, Supplier<T> loader) {
+        long start = System.nanoTime();
+        T value = loader.get();
+        long nanos = System.nanoTime() - start;
+        deltas.computeIfAbsent(namespace, k -> new AtomicLong(DELTA)).updateAndGet(d -> d + (nanos - d) / 8);
+        meterRegistry.counter(METRIC_LOADS, "namespace", CacheConstant.name(namespace), "result", "load").increment();
+        if (null != value) {
+            stringRedisTemplate.opsForValue().set(key, value.toJson(), ttl);
+        } else if (!appConfig.getCacheTombstoneTtl().isZero()) {
+            stringRedisTemplate.opsForValue().set(key, CacheConstant.TOMBSTONE, appConfig.getCacheTombstoneTtl());
+        }
+        return value;
+    }
+
+    /**
+     * 布隆过滤器判断记录是否可能存在，没有启用或者没有构建完成时认为存在
+     *
+     * @param namespace CacheConstant 中的 key 前缀
+     * @param id        key 后缀
+     * @return false 表示一定不存在
+     */
+    public boolean known(String namespace, String id) {
+        BloomFilter bloom = blooms.get(namespace);
+        if (!appConfig.getCacheBloom() || null == bloom || !ready.contains(namespace)) {
+            return true;
+        }
+        return bloom.mightContain(id);
+    }
+
+    /**
+     * XFetch：remaining - L1 过期时间 <= delta * beta * -ln(random) 时提前刷新
+     *
+     * @param pttl 剩余过期时间（毫秒）
+     */
+    private boolean early(String namespace, long pttl) {
+        double beta = appConfig.getCacheEarlyRefresh();
+        if (beta <= 0) {
+            return false;
+        }
+        long delta = deltas.computeIfAbsent(namespace, k -> new AtomicLong(DELTA)).get();
+        double remaining = TimeUnit.MILLISECONDS.toNanos(pttl) - appConfig.getCacheLocalTtl().toNanos();
+        return remaining <= delta * beta * -Math.log(1.0 - ThreadLocalRandom.current().nextDouble());
+    }
+
+    /**
+     * 后台刷新，同一个 key 同时只有一个刷新
+     */
+    private <T extends Serializer> void refresh(String namespace, String key, Duration ttl, Supplier<T> loader) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        meterRegistry.counter(METRIC_LOADS, "namespace", CacheConstant.name(namespace), "result", "refresh").increment();
+        try {
+            executor.execute(() -> {
+                try {
+                    NearCache<T> cache = cache(namespace);
+                    long generation = cache.generation(key);
+                    T value = load(namespace, key, ttl, loader);
+                    if (null == value) {
+                        evict(key);
+                    } else {
+                        cache.put(key, value, generation);
+                    }
+                } catch (Exception e) {
+                    log.warn("cache refresh failed: {}, {}", key, e.getMessage());
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+        }
+    }
+
+    /**
+     * 失效 L1 和 L2，并通知其它实例
+     *
+     * @param key 完整的 key
+     */
+    public void evict(String key) {
+        invalidate(key);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate(key);
+                }
+            });
+        }
+    }
+
+    /**
+     * 新增记录：提交之后清除墓碑（L1 和 L2），加入布隆过滤器，并通知其它实例
+     *
+     * @param namespace CacheConstant 中的 key 前缀
+     * @param ids       新增记录的 id
+     */
+    public void created(String namespace, Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        List<String> keys = ids.stream().map(id -> namespace + id).toList();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate(keys);
+                }
+            });
+        } else {
+            invalidate(keys);
+        }
+    }
+
+    private void invalidate(String key) {
+        invalidate(List.of(key));
+    }
+
+    private void invalidate(List<String> keys) {
+        stringRedisTemplate.delete(keys);
+        keys.forEach(this::local);
+        try {
+            stringRedisTemplate.convertAndSend(CacheConstant.INVALIDATE, String.join("\n", keys));
+        } catch (Exception e) {
+            log.warn("publish invalidation failed: {}, {}", keys, e.getMessage());
+        }
+    }
+
+    /**
+     * 其它实例（以及本实例）发出的失效通知
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        for (String key : new String(message.getBody(), StandardCharsets.UTF_8).split("\n")) {
+            if (!key.isEmpty()) {
+                local(key);
+            }
+        }
+    }
+
+    /**
+     * 失效本实例的 L1 和墓碑；失效的 key 可能是新增的记录，加入布隆过滤器
+     */
+    private void local(String key) {
+        for (Map.Entry<String, NearCache<?>> e : caches.entrySet()) {
+            if (key.startsWith(e.getKey())) {
+                e.getValue().invalidate(key);
+                meterRegistry.counter(METRIC_INVALIDATIONS, "namespace", CacheConstant.name(e.getKey())).increment();
+            }
+        }
+        for (Map.Entry<String, NearCache<Boolean>> e : tombstones.entrySet()) {
+            if (key.startsWith(e.getKey())) {
+                e.getValue().invalidate(key);
+            }
+        }
+        for (Map.Entry<String, BloomFilter> e : blooms.entrySet()) {
+            if (key.startsWith(e.getKey())) {
+                e.getValue().add(key.substring(e.getKey().length()));
+            }
+        }
+    }
+
+}
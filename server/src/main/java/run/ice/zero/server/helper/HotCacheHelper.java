@@ -0,0 +1,253 @@
+package run.ice.zero.server.helper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import run.ice.zero.server.config.AppConfig;
+import run.ice.zero.server.store.FileRegion;
+import run.ice.zero.server.store.FileSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 热点文件缓存
+ * <p>
+ * 小文件内容复制到直接内存（堆外），命中时不再打开文件，直接从内存输出。
+ * - 容量按字节限制，按 LRU 顺序淘汰
+ * - 准入控制（TinyLFU）：新文件的访问频率必须高于将被淘汰的文件才能进入缓存，
+ *   避免一次性访问的文件把热点文件挤出去
+ * - 访问频率定期减半，使过去的热点逐渐冷却
+ *
+ * @author DaoDao
+ */
+@Slf4j
+@Component
+public class HotCacheHelper {
+
+    private static final String METRIC_REQUESTS = "zero.file.cache.requests";
+    private static final String METRIC_RESIDENT = "zero.file.cache.resident";
+    private static final String METRIC_ENTRIES = "zero.file.cache.entries";
+    private static final String METRIC_HIT_RATIO = "zero.file.cache.hit.ratio";
+
+    /**
+     * 访问次数累计到 SAMPLE 倍缓存条目数时，所有频率减半，只访问过一次的记录被清除
+     */
+    private static final int SAMPLE = 10;
+
+    /**
+     * 至少访问两次才考虑进入缓存
+     */
+    private static final int ADMIT = 2;
+
+    @Resource
+    private AppConfig appConfig;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    /**
+     * LRU 顺序，访问时移动到末尾
+     */
+    private final LinkedHashMap<String, ByteBuffer> cache = new LinkedHashMap<>(256, 0.75f, true);
+
+    private final Map<String, Integer> frequency = new ConcurrentHashMap<>();
+
+    private final AtomicLong increments = new AtomicLong();
+
+    private long resident = 0L;
+
+    private Counter hit;
+
+    private Counter miss;
+
+    @PostConstruct
+    public void init() {
+        hit = Counter.builder(METRIC_REQUESTS).tag("result", "hit").register(meterRegistry);
+        miss = Counter.builder(METRIC_REQUESTS).tag("result", "miss").register(meterRegistry);
+        Gauge.builder(METRIC_RESIDENT, this, HotCacheHelper::resident).baseUnit("bytes").register(meterRegistry);
+        Gauge.builder(METRIC_ENTRIES, this, HotCacheHelper::entries).register(meterRegistry);
+        Gauge.builder(METRIC_HIT_RATIO, this, HotCacheHelper::ratio).register(meterRegistry);
+    }
+
+    public boolean enabled() {
+        return appConfig.getFileHotCacheSize().toBytes() > 0;
+    }
+
+    /**
+     * 查询缓存
+     *
+     * @param key 缓存 key，需要包含文件版本
+     * @return 只读缓冲区，未命中时返回 null
+     */
+    public ByteBuffer get(String key) {
+        if (!enabled()) {
+            return null;
+        }
+        increment(key);
+        ByteBuffer buffer;
+        synchronized (cache) {
+            buffer = cache.get(key);
+        }
+        if (null == buffer) {
+            miss.increment();
+            return null;
+        }
+        hit.increment();
+        return buffer.duplicate();
+    }
+
+    /**
+     * 未命中时尝试把文件加入缓存
+     *
+     * @param key    缓存 key
+     * @param source 文件
+     * @return 加入缓存时返回带有缓冲区的 FileSource，否则原样返回
+     */
+    public FileSource admit(String key, FileSource source) {
+        long length = source.getLength();
+        if (!enabled() || length <= 0 || length > appConfig.getFileHotCacheMaxFile().toBytes()) {
+            return source;
+        }
+        int freq = frequency.getOrDefault(key, 0);
+        if (freq < ADMIT || !admittable(freq, length)) {
+            return source;
+        }
+        ByteBuffer buffer;
+        try {
+            buffer = load(source);
+        } catch (IOException e) {
+            log.warn("hot cache load failed: {}, {}", key, e.getMessage());
+            return source;
+        }
+        put(key, buffer);
+        return new FileSource(source.getStore(), source.getKey(), source.getRegion(), length, buffer.duplicate());
+    }
+
+    /**
+     * 移除缓存，文件被删除或迁移时调用
+     *
+     * @param key 缓存 key
+     */
+    public void evict(String key) {
+        synchronized (cache) {
+            ByteBuffer buffer = cache.remove(key);
+            if (null != buffer) {
+                resident -= buffer.capacity();
+            }
+        }
+        frequency.remove(key);
+    }
+
+    /**
+     * 把需要淘汰的文件频率与候选文件比较，候选文件更热时才准入
+     */
+    private boolean admittable(int freq, long length) {
+        long capacity = appConfig.getFileHotCacheSize().toBytes();
+        synchronized (cache) {
+            long free = capacity - resident;
+            Iterator<Map.Entry<String, ByteBuffer>> iterator = cache.entrySet().iterator();
+            while (free < length && iterator.hasNext()) {
+                Map.Entry<String, ByteBuffer> victim = iterator.next();
+                if (frequency.getOrDefault(victim.getKey(), 0) >= freq) {
+                    return false;
+                }
+                free += victim.getValue().capacity();
+            }
+            return free >= length;
+        }
+    }
+
+    private void put(String key, ByteBuffer buffer) {
+        long capacity = appConfig.getFileHotCacheSize().toBytes();
+        synchronized (cache) {
+            ByteBuffer old = cache.put(key, buffer);
+            resident += buffer.capacity() - (null == old ? 0 : old.capacity());
+            Iterator<Map.Entry<String, ByteBuffer>> iterator = cache.entrySet().iterator();
+            while (resident > capacity && iterator.hasNext()) {
+                Map.Entry<String, ByteBuffer> victim = iterator.next();
+                if (victim.getKey().equals(key)) {
+                    continue;
+                }
+                resident -= victim.getValue().capacity();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * 读取整个文件到直接内存
+     */
+    private static ByteBuffer load(FileSource source) throws IOException {
+        int length = (int) source.getLength();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+        FileRegion region = source.getRegion();
+        if (null != region) {
+            try (FileChannel channel = FileChannel.open(region.getFile().toPath(), StandardOpenOption.READ)) {
+                long position = region.getPosition();
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        break;
+                    }
+                }
+            }
+        } else {
+            try (InputStream is = source.getStore().get(source.getKey(), 0L, length);
+                 ReadableByteChannel channel = Channels.newChannel(is)) {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        break;
+                    }
+                }
+            }
+        }
+        if (buffer.hasRemaining()) {
+            throw new IOException("short read: " + buffer.position() + " / " + length);
+        }
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    private void increment(String key) {
+        frequency.merge(key, 1, Integer::sum);
+        long limit = SAMPLE * Math.max((long) entries(), 1024L);
+        if (increments.incrementAndGet() >= limit) {
+            increments.set(0L);
+            frequency.replaceAll((k, v) -> v >> 1);
+            frequency.values().removeIf(v -> v == 0);
+        }
+    }
+
+    private double resident() {
+        synchronized (cache) {
+            return resident;
+        }
+    }
+
+    private double entries() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private double ratio() {
+        double h = hit.count();
+        double total = h + miss.count();
+        return total == 0 ? 0 : h / total;
+    }
+
+}
@@ -0,0 +1,413 @@
+package run.ice.zero.server.helper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.Resource;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import run.ice.zero.server.config.AppConfig;
+import run.ice.zero.server.store.FileRegion;
+import run.ice.zero.server.store.FileSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文件输出
+ * <p>
+ * 支持 Range 分段输出。
+ * 本地文件在容器支持 sendfile 时，由容器直接从文件描述符发送到 socket，不经过用户态；
+ * 否则使用池化的直接内存缓冲区，从 FileChannel 读取后写入 ServletOutputStream；
+ * 远程存储使用数据流输出；热点缓存中的文件直接从内存输出。
+ *
+ * @author DaoDao
+ */
+@Slf4j
+@Component
+public class OutputHelper {
+
+    /**
+     * Tomcat sendfile 请求属性
+     */
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    public static final String MODE_SENDFILE = "sendfile";
+    public static final String MODE_BUFFER = "buffer";
+    public static final String MODE_STREAM = "stream";
+    public static final String MODE_CACHE = "cache";
+
+    private static final String METRIC_BYTES = "zero.file.output.bytes";
+    private static final String METRIC_TIME = "zero.file.output.time";
+    private static final String METRIC_THROUGHPUT = "zero.file.output.throughput";
+
+    /**
+     * 缓冲区池容量
+     */
+    private static final int POOL_SIZE = 64;
+
+    private final BlockingQueue<ByteBuffer> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    @Resource
+    private AppConfig appConfig;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Resource
+    private ThrottleHelper throttleHelper;
+
+    /**
+     * 输出文件，支持 RFC 7233 Range 请求
+     * <p>
+     * - 没有 Range 或者 If-Range 不匹配时，输出整个文件 200
+     * - 单个区间输出 206 + Content-Range，仍可走 sendfile
+     * - 多个区间输出 206 multipart/byteranges
+     * - 没有可满足的区间时输出 416
+     *
+     * @param request      HttpServletRequest
+     * @param response     HttpServletResponse
+     * @param source       文件
+     * @param contentType  文件类型
+     * @param etag         实体标签，可以为 null
+     * @param lastModified 最后修改时间（毫秒）
+     * @throws IOException IOException
+     */
+    public void output(HttpServletRequest request, HttpServletResponse response, FileSource source, String contentType, String etag, long lastModified) throws IOException {
+        long length = source.getLength();
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        List<long[]> ranges = ranges(request, length, etag, lastModified);
+        if (null == ranges) {
+            response.setContentType(contentType);
+            try (ThrottleHelper.Throttle throttle = throttleHelper.open(request, length)) {
+                transfer(request, response, source, 0L, length, throttle);
+            }
+            return;
+        }
+        if (ranges.isEmpty()) {
+            response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            response.setContentLength(0);
+            return;
+        }
+        response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+        if (ranges.size() == 1) {
+            long[] range = ranges.getFirst();
+            response.setContentType(contentType);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + range[0] + "-" + range[1] + "/" + length);
+            long count = range[1] - range[0] + 1;
+            try (ThrottleHelper.Throttle throttle = throttleHelper.open(request, count)) {
+                transfer(request, response, source, range[0], count, throttle);
+            }
+            return;
+        }
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        long count = 0L;
+        for (long[] range : ranges) {
+            count += range[1] - range[0] + 1;
+        }
+        try (ThrottleHelper.Throttle throttle = throttleHelper.open(request, count)) {
+            multipart(null == throttle ? response.getOutputStream() : throttle.wrap(response.getOutputStream()), source, contentType, ranges, length, boundary);
+        }
+    }
+
+    /**
+     * 多个区间输出 multipart/byteranges
+     */
+    private void multipart(ServletOutputStream os, FileSource source, String contentType, List<long[]> ranges, long length, String boundary) throws IOException {
+        for (long[] range : ranges) {
+            String head = "\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": bytes " + range[0] + "-" + range[1] + "/" + length + "\r\n"
+                    + "\r\n";
+            os.write(head.getBytes(StandardCharsets.ISO_8859_1));
+            copy(os, source, range[0], range[1] - range[0] + 1);
+        }
+        os.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * 条件请求（RFC 9110），只比较请求头，不访问存储
+     * <p>
+     * 有 If-None-Match 时按弱比较匹配 etag（或者 *），否则比较 If-Modified-Since 与 lastModified（秒级）；
+     * 命中时设置 304、ETag 和 Last-Modified。只处理 GET / HEAD。
+     *
+     * @param request      HttpServletRequest
+     * @param response     HttpServletResponse
+     * @param etag         实体标签（带引号）
+     * @param lastModified 最后修改时间（毫秒），不大于 0 表示未知
+     * @return true 表示已返回 304
+     */
+    public boolean notModified(HttpServletRequest request, HttpServletResponse response, String etag, long lastModified) {
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return false;
+        }
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        boolean matched = false;
+        if (null != ifNoneMatch) {
+            for (String tag : ifNoneMatch.split(",")) {
+                String t = tag.trim();
+                if (t.startsWith("W/")) {
+                    t = t.substring(2);
+                }
+                if ("*".equals(t) || t.equals(etag)) {
+                    matched = true;
+                    break;
+                }
+            }
+        } else if (lastModified > 0) {
+            long since;
+            try {
+                since = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+            } catch (IllegalArgumentException e) {
+                since = -1L;
+            }
+            matched = since >= 0 && lastModified / 1000 <= since / 1000;
+        }
+        if (!matched) {
+            return false;
+        }
+        response.setStatus(HttpStatus.NOT_MODIFIED.value());
+        response.setHeader(HttpHeaders.ETAG, etag);
+        if (lastModified > 0) {
+            response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        }
+        return true;
+    }
+
+    /**
+     * 解析 Range 请求头
+     *
+     * @return null 表示输出整个文件；空列表表示区间不可满足；否则为 [start, end] 闭区间列表
+     */
+    private List<long[]> ranges(HttpServletRequest request, long length, String etag, long lastModified) {
+        String header = request.getHeader(HttpHeaders.RANGE);
+        if (null == header || !header.startsWith("bytes=")) {
+            return null;
+        }
+        if (!ifRange(request.getHeader(HttpHeaders.IF_RANGE), etag, lastModified)) {
+            return null;
+        }
+        List<HttpRange> httpRanges;
+        try {
+            httpRanges = HttpRange.parseRanges(header);
+        } catch (IllegalArgumentException e) {
+            log.debug("ignore invalid range: {}", header);
+            return null;
+        }
+        List<long[]> ranges = new ArrayList<>();
+        long total = 0L;
+        for (HttpRange httpRange : httpRanges) {
+            if (length == 0) {
+                break;
+            }
+            long start = httpRange.getRangeStart(length);
+            long end = httpRange.getRangeEnd(length);
+            if (start >= length || start > end) {
+                continue;
+            }
+            ranges.add(new long[]{start, end});
+            total += end - start + 1;
+        }
+        /*
+         * 区间总长度超过文件长度时（大量重叠区间），忽略 Range 直接输出整个文件
+         */
+        if (total > length) {
+            return null;
+        }
+        return ranges;
+    }
+
+    /**
+     * If-Range 校验，实体标签使用强比较，日期要求与最后修改时间完全一致（秒级）
+     */
+    private boolean ifRange(String ifRange, String etag, long lastModified) {
+        if (null == ifRange || ifRange.isEmpty()) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return null != etag && !ifRange.startsWith("W/") && ifRange.equals(etag);
+        }
+        try {
+            long since = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return since / 1000 == lastModified / 1000;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 输出文件的 [position, position + count) 区间
+     *
+     * @param request  HttpServletRequest
+     * @param response HttpServletResponse
+     * @param source   文件
+     * @param position 起始位置
+     * @param count    字节数
+     * @param throttle 限速，为 null 时不限速；限速时不使用 sendfile
+     * @throws IOException IOException
+     */
+    public void transfer(HttpServletRequest request, HttpServletResponse response, FileSource source, long position, long count, ThrottleHelper.Throttle throttle) throws IOException {
+        FileRegion region = source.getRegion();
+        if (null == throttle && null == source.getBuffer() && null != region && sendfile(request, response, region.getFile(), region.getPosition() + position, count)) {
+            return;
+        }
+        response.setContentLengthLong(count);
+        ServletOutputStream os = response.getOutputStream();
+        copy(null == throttle ? os : throttle.wrap(os), source, position, count);
+    }
+
+    /**
+     * 热点缓存直接从内存输出，本地文件区间使用直接内存缓冲区，其它存储使用数据流
+     *
+     * @param os       ServletOutputStream
+     * @param source   文件
+     * @param position 起始位置
+     * @param count    字节数
+     * @throws IOException IOException
+     */
+    public void copy(ServletOutputStream os, FileSource source, long position, long count) throws IOException {
+        ByteBuffer cached = source.getBuffer();
+        if (null != cached) {
+            long start = System.nanoTime();
+            ByteBuffer slice = cached.duplicate();
+            slice.limit((int) (position + count)).position((int) position);
+            os.write(slice);
+            record(MODE_CACHE, count, System.nanoTime() - start);
+            return;
+        }
+        FileRegion region = source.getRegion();
+        if (null != region) {
+            buffer(os, region.getFile(), region.getPosition() + position, count);
+            return;
+        }
+        long start = System.nanoTime();
+        long written = 0L;
+        try (InputStream is = source.getStore().get(source.getKey(), position, count)) {
+            written = is.transferTo(os);
+        } finally {
+            record(MODE_STREAM, written, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 交给容器 sendfile，请求处理结束后由容器发送
+     *
+     * @return 容器是否接管了输出
+     */
+    private boolean sendfile(HttpServletRequest request, HttpServletResponse response, File file, long position, long count) throws IOException {
+        if (!appConfig.getFileZeroCopy() || null == request || response.isCommitted()) {
+            return false;
+        }
+        if (!Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            return false;
+        }
+        response.setContentLengthLong(count);
+        request.setAttribute(SENDFILE_FILENAME, file.getCanonicalPath());
+        request.setAttribute(SENDFILE_START, position);
+        request.setAttribute(SENDFILE_END, position + count);
+        counter(MODE_SENDFILE).increment(count);
+        return true;
+    }
+
+    /**
+     * 使用池化直接内存缓冲区输出
+     *
+     * @param os       ServletOutputStream
+     * @param file     文件
+     * @param position 起始位置
+     * @param count    字节数
+     * @throws IOException IOException
+     */
+    public void buffer(ServletOutputStream os, File file, long position, long count) throws IOException {
+        long start = System.nanoTime();
+        long written = 0L;
+        ByteBuffer buffer = acquire();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long offset = position;
+            long end = position + count;
+            while (offset < end) {
+                buffer.clear();
+                int limit = (int) Math.min(buffer.capacity(), end - offset);
+                buffer.limit(limit);
+                int read = channel.read(buffer, offset);
+                if (read < 0) {
+                    break;
+                }
+                buffer.flip();
+                os.write(buffer);
+                offset += read;
+                written += read;
+            }
+        } finally {
+            release(buffer);
+            record(MODE_BUFFER, written, System.nanoTime() - start);
+        }
+    }
+
+    private ByteBuffer acquire() {
+        int size = (int) appConfig.getFileBufferSize().toBytes();
+        ByteBuffer buffer = pool.poll();
+        if (null == buffer || buffer.capacity() != size) {
+            buffer = ByteBuffer.allocateDirect(size);
+        }
+        return buffer;
+    }
+
+    private void release(ByteBuffer buffer) {
+        buffer.clear();
+        boolean b = pool.offer(buffer);
+        if (!b) {
+            log.debug("buffer pool is full, drop buffer");
+        }
+    }
+
+    private Counter counter(String mode) {
+        return Counter.builder(METRIC_BYTES)
+                .baseUnit("bytes")
+                .tag("mode", mode)
+                .register(meterRegistry);
+    }
+
+    private void record(String mode, long bytes, long nanos) {
+        counter(mode).increment(bytes);
+        Timer.builder(METRIC_TIME)
+                .tag("mode", mode)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        if (nanos > 0 && bytes > 0) {
+            DistributionSummary.builder(METRIC_THROUGHPUT)
+                    .baseUnit("bytes/s")
+                    .tag("mode", mode)
+                    .register(meterRegistry)
+                    .record(bytes * 1_000_000_000.0 / nanos);
+        }
+    }
+
+}
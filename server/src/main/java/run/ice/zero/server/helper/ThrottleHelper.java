@@ -0,0 +1,247 @@
+package run.ice.zero.server.helper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.stereotype.Component;
+import run.ice.zero.server.config.AppConfig;
+import run.ice.zero.server.util.TokenBucket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 输出限速
+ * <p>
+ * 令牌桶按字节限速，分为总带宽和每个用户的带宽：
+ * - 每个正在下载的用户一个令牌桶，速率为 min(用户带宽, 总带宽 / 正在下载的用户数)，
+ *   用户开始或结束下载时重新分配，多个用户平分总带宽（公平分享）
+ * - 同一用户的多个下载共用一个令牌桶，按块轮流预留令牌，各下载之间也大致平均
+ * - 总带宽令牌桶作为上限，防止分配调整的间隙超出
+ * - 小于 app.file.output-throttle-min 的文件不限速，不影响预览等小文件的延迟
+ * 限速的输出不能交给容器 sendfile，按块写入 ServletOutputStream。
+ *
+ * @author DaoDao
+ */
+@Component
+public class ThrottleHelper {
+
+    private static final String METRIC_THROTTLED = "zero.file.output.throttled";
+    private static final String METRIC_BYTES = "zero.file.output.throttled.bytes";
+    private static final String METRIC_USERS = "zero.file.output.throttled.users";
+
+    private static final String ANONYMOUS = "anonymous";
+
+    /**
+     * 正在下载的用户
+     */
+    private static class User {
+
+        private final TokenBucket bucket;
+
+        private int downloads;
+
+        User(TokenBucket bucket) {
+            this.bucket = bucket;
+        }
+
+    }
+
+    @Resource
+    private AppConfig appConfig;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, User> users = new ConcurrentHashMap<>();
+
+    private TokenBucket global;
+
+    private Timer throttled;
+
+    private Counter bytes;
+
+    @PostConstruct
+    public void init() {
+        global = new TokenBucket(appConfig.getFileOutputRate().toBytes(), chunk());
+        throttled = Timer.builder(METRIC_THROTTLED).register(meterRegistry);
+        bytes = Counter.builder(METRIC_BYTES).baseUnit("bytes").register(meterRegistry);
+        Gauge.builder(METRIC_USERS, users, Map::size).register(meterRegistry);
+    }
+
+    public boolean enabled() {
+        return appConfig.getFileOutputRate().toBytes() > 0 || appConfig.getFileOutputUserRate().toBytes() > 0;
+    }
+
+    /**
+     * 开始一次限速输出
+     *
+     * @param request HttpServletRequest
+     * @param length  输出的字节数
+     * @return 不需要限速时返回 null；否则使用完必须关闭
+     */
+    public Throttle open(HttpServletRequest request, long length) {
+        if (!enabled() || length < appConfig.getFileOutputThrottleMin().toBytes()) {
+            return null;
+        }
+        String name = null == request ? null : request.getRemoteUser();
+        if (null == name) {
+            name = null == request ? ANONYMOUS : request.getRemoteAddr();
+        }
+        User user = users.compute(name, (k, v) -> {
+            if (null == v) {
+                v = new User(new TokenBucket(0, chunk()));
+            }
+            v.downloads++;
+            return v;
+        });
+        rebalance();
+        return new Throttle(name, user);
+    }
+
+    private void close(String name) {
+        users.computeIfPresent(name, (k, v) -> --v.downloads <= 0 ? null : v);
+        rebalance();
+    }
+
+    /**
+     * 按正在下载的用户数重新分配每个用户的速率
+     */
+    private synchronized void rebalance() {
+        long total = appConfig.getFileOutputRate().toBytes();
+        long limit = appConfig.getFileOutputUserRate().toBytes();
+        int n = Math.max(users.size(), 1);
+        double rate = total > 0 ? (double) total / n : 0;
+        if (limit > 0) {
+            rate = rate > 0 ? Math.min(rate, limit) : limit;
+        }
+        for (User user : users.values()) {
+            user.bucket.rate(rate);
+        }
+    }
+
+    /**
+     * 每次预留令牌的字节数，与输出缓冲区相同
+     */
+    private int chunk() {
+        return (int) appConfig.getFileBufferSize().toBytes();
+    }
+
+    private void acquire(User user, int permits) {
+        long wait = Math.max(user.bucket.reserve(permits), global.reserve(permits));
+        if (wait > 0) {
+            LockSupport.parkNanos(wait);
+            throttled.record(wait, TimeUnit.NANOSECONDS);
+        }
+        bytes.increment(permits);
+    }
+
+    /**
+     * 一次限速输出
+     */
+    public class Throttle implements AutoCloseable {
+
+        private final String name;
+
+        private final User user;
+
+        private boolean closed;
+
+        private Throttle(String name, User user) {
+            this.name = name;
+            this.user = user;
+        }
+
+        /**
+         * 包装输出流，按块取令牌后写入
+         *
+         * @param os ServletOutputStream
+         * @return 限速的 ServletOutputStream，关闭时关闭原输出流
+         */
+        public ServletOutputStream wrap(ServletOutputStream os) {
+            return new ThrottledOutputStream(os, this);
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                ThrottleHelper.this.close(name);
+            }
+        }
+
+    }
+
+    private class ThrottledOutputStream extends ServletOutputStream {
+
+        private final ServletOutputStream os;
+
+        private final Throttle throttle;
+
+        private final int chunk = chunk();
+
+        ThrottledOutputStream(ServletOutputStream os, Throttle throttle) {
+            this.os = os;
+            this.throttle = throttle;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            acquire(throttle.user, 1);
+            os.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, chunk);
+                acquire(throttle.user, n);
+                os.write(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void write(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                int n = Math.min(buffer.remaining(), chunk);
+                acquire(throttle.user, n);
+                os.write(buffer.slice(buffer.position(), n));
+                buffer.position(buffer.position() + n);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            os.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            os.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return os.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            os.setWriteListener(writeListener);
+        }
+
+    }
+
+}
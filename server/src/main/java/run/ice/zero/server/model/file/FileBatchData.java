@@ -0,0 +1,19 @@
+package run.ice.zero.server.model.file;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import run.ice.zero.server.model.Serializer;
+
+import java.util.List;
+
+/**
+ * @author DaoDao
+ */
+@Schema(title = "FileBatchData", description = "批量查询文件结果")
+@Data
+public class FileBatchData implements Serializer {
+
+    @Schema(title = "files", description = "文件信息，按请求顺序排列，code 错误或者不存在的文件不返回")
+    private List<FileData> files;
+
+}
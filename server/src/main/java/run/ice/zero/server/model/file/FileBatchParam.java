@@ -0,0 +1,25 @@
+package run.ice.zero.server.model.file;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+import run.ice.zero.server.model.Serializer;
+
+import java.util.List;
+
+/**
+ * @author DaoDao
+ */
+@Schema(title = "FileBatchParam", description = "批量查询文件")
+@Data
+public class FileBatchParam implements Serializer {
+
+    @Schema(title = "files", description = "文件 id 和 code，最多 100 个")
+    @Valid
+    @NotEmpty
+    @Size(max = 100)
+    private List<FileParam> files;
+
+}
@@ -1,6 +1,8 @@
 package run.ice.zero.server.model.file;
 
 import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.Pattern;
 import jakarta.validation.constraints.Size;
@@ -26,4 +28,9 @@ public class FileParam implements Serializer {
     @Pattern(regexp = "^[0-9A-Za-z]{1,16}$")
     private String code;
 
+    @Schema(title = "size", description = "图片尺寸（最长边），取不小于该值的变体，为空时输出原图", example = "128")
+    @Min(1)
+    @Max(10000)
+    private Integer size;
+
 }
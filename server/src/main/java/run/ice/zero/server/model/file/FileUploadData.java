@@ -0,0 +1,22 @@
+package run.ice.zero.server.model.file;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import run.ice.zero.server.model.Serializer;
+
+import java.util.List;
+
+/**
+ * @author DaoDao
+ */
+@Schema(title = "FileUploadData", description = "批量上传结果")
+@Data
+public class FileUploadData implements Serializer {
+
+    @Schema(title = "files", description = "上传成功的文件，按请求顺序排列")
+    private List<FileData> files;
+
+    @Schema(title = "errors", description = "上传失败的文件")
+    private List<FileUploadError> errors;
+
+}
@@ -0,0 +1,26 @@
+package run.ice.zero.server.model.file;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import run.ice.zero.server.model.Serializer;
+
+/**
+ * @author DaoDao
+ */
+@Schema(title = "FileUploadError", description = "上传失败的文件")
+@Data
+public class FileUploadError implements Serializer {
+
+    @Schema(title = "index", description = "文件在请求中的序号，从 0 开始")
+    private Integer index;
+
+    @Schema(title = "origin", description = "源文件名")
+    private String origin;
+
+    @Schema(title = "code", description = "错误编码")
+    private String code;
+
+    @Schema(title = "message", description = "错误说明")
+    private String message;
+
+}
@@ -0,0 +1,34 @@
+package run.ice.zero.server.model.file;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import run.ice.zero.server.model.Serializer;
+
+import java.util.List;
+
+/**
+ * @author DaoDao
+ */
+@Schema(title = "UploadData", description = "分片上传会话信息")
+@Data
+public class UploadData implements Serializer {
+
+    @Schema(title = "uploadId", description = "上传会话 ID", example = "0123456789abcdef0123456789abcdef")
+    private String uploadId;
+
+    @Schema(title = "origin", description = "源文件名", example = "video.mp4")
+    private String origin;
+
+    @Schema(title = "size", description = "文件大小", example = "1073741824")
+    private Long size;
+
+    @Schema(title = "partSize", description = "分片大小", example = "8388608")
+    private Long partSize;
+
+    @Schema(title = "partCount", description = "分片数量", example = "128")
+    private Integer partCount;
+
+    @Schema(title = "parts", description = "已上传的分片", example = "[]")
+    private List<UploadPart> parts;
+
+}
@@ -0,0 +1,32 @@
+package run.ice.zero.server.model.file;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+import run.ice.zero.server.model.Serializer;
+
+/**
+ * @author DaoDao
+ */
+@Schema(title = "UploadInit", description = "分片上传初始化")
+@Data
+public class UploadInit implements Serializer {
+
+    @Schema(title = "origin", description = "源文件名", example = "video.mp4")
+    @NotEmpty
+    @Size(min = 1, max = 128)
+    private String origin;
+
+    @Schema(title = "size", description = "文件大小", example = "1073741824")
+    @NotNull
+    @Min(value = 1)
+    private Long size;
+
+    @Schema(title = "partSize", description = "分片大小，为空时使用服务端默认值", example = "8388608")
+    @Min(value = 1)
+    private Long partSize;
+
+}
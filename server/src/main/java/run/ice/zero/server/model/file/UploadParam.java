@@ -0,0 +1,21 @@
+package run.ice.zero.server.model.file;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Pattern;
+import lombok.Data;
+import run.ice.zero.server.model.Serializer;
+
+/**
+ * @author DaoDao
+ */
+@Schema(title = "UploadParam", description = "分片上传会话")
+@Data
+public class UploadParam implements Serializer {
+
+    @Schema(title = "uploadId", description = "上传会话 ID", example = "0123456789abcdef0123456789abcdef")
+    @NotEmpty
+    @Pattern(regexp = "^[0-9a-f]{32}$")
+    private String uploadId;
+
+}
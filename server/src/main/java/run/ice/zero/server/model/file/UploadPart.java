@@ -0,0 +1,23 @@
+package run.ice.zero.server.model.file;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import run.ice.zero.server.model.Serializer;
+
+/**
+ * @author DaoDao
+ */
+@Schema(title = "UploadPart", description = "已上传的分片")
+@Data
+public class UploadPart implements Serializer {
+
+    @Schema(title = "number", description = "分片序号，从 1 开始", example = "1")
+    private Integer number;
+
+    @Schema(title = "size", description = "分片大小", example = "8388608")
+    private Long size;
+
+    @Schema(title = "sha256", description = "分片 SHA-256 摘要", example = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855")
+    private String sha256;
+
+}
@@ -0,0 +1,68 @@
+package run.ice.zero.server.processor;
+
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import run.ice.zero.server.config.AppConfig;
+import run.ice.zero.server.constant.CacheConstant;
+import run.ice.zero.server.entity.FileInfo;
+import run.ice.zero.server.helper.CacheHelper;
+import run.ice.zero.server.repository.FileInfoRepository;
+import run.ice.zero.server.store.FileStore;
+import run.ice.zero.server.util.FileUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+/**
+ * 补充 SHA-256 摘要
+ * <p>
+ * 单次上传在写入时计算摘要，分片上传合并后不再读取文件，由这里补充。
+ * 变体、水印图等按摘要命名，所以排在最前面。
+ *
+ * @author DaoDao
+ */
+@Slf4j
+@Order(100)
+@Component
+public class ChecksumProcessor implements FileProcessor {
+
+    @Resource
+    private AppConfig appConfig;
+
+    @Resource
+    private FileInfoRepository fileInfoRepository;
+
+    @Resource
+    private CacheHelper cacheHelper;
+
+    @Override
+    public String name() {
+        return "checksum";
+    }
+
+    @Override
+    public boolean supports(FileInfo fileInfo) {
+        return null == fileInfo.getHash();
+    }
+
+    @Override
+    public void process(FileInfo fileInfo, FileStore store, String key) throws IOException {
+        MessageDigest digest = FileUtil.sha256();
+        byte[] buffer = new byte[(int) appConfig.getFileBufferSize().toBytes()];
+        try (InputStream is = store.get(key, 0L, fileInfo.getSize())) {
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        fileInfo.setHash(HexFormat.of().formatHex(digest.digest()));
+        fileInfo.setVersion(fileInfoRepository.save(fileInfo).getVersion());
+        cacheHelper.evict(CacheConstant.FILE_INFO + fileInfo.getId());
+        log.debug("checksum: {}, {}", fileInfo.getId(), fileInfo.getHash());
+    }
+
+}
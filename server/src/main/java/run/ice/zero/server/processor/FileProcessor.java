@@ -0,0 +1,44 @@
+package run.ice.zero.server.processor;
+
+import run.ice.zero.server.entity.FileInfo;
+import run.ice.zero.server.store.FileStore;
+
+import java.io.IOException;
+
+/**
+ * 上传后处理
+ * <p>
+ * 实现类注册为 Bean 即生效，按 {@link org.springframework.core.annotation.Order} 顺序执行。
+ * 上传时只写入处理任务，由 {@link run.ice.zero.server.service.TaskService} 在后台执行，失败时按退避时间重试，
+ * 已成功的处理器在重试时跳过，因此 process 需要可以重复执行。
+ *
+ * @author DaoDao
+ */
+public interface FileProcessor {
+
+    /**
+     * 处理器名称，记录在任务中，用作指标标签
+     *
+     * @return 名称
+     */
+    String name();
+
+    /**
+     * 是否需要处理
+     *
+     * @param fileInfo FileInfo
+     * @return 是否需要处理
+     */
+    boolean supports(FileInfo fileInfo);
+
+    /**
+     * 处理文件，可以修改 fileInfo（例如标记为无效），后续处理器看到修改后的值
+     *
+     * @param fileInfo FileInfo
+     * @param store    文件所在存储
+     * @param key      文件 key
+     * @throws IOException IOException
+     */
+    void process(FileInfo fileInfo, FileStore store, String key) throws IOException;
+
+}
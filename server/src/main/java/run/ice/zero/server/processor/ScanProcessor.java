@@ -0,0 +1,104 @@
+package run.ice.zero.server.processor;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import run.ice.zero.server.config.AppConfig;
+import run.ice.zero.server.constant.CacheConstant;
+import run.ice.zero.server.entity.FileInfo;
+import run.ice.zero.server.helper.CacheHelper;
+import run.ice.zero.server.repository.FileInfoRepository;
+import run.ice.zero.server.store.FileStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 恶意文件扫描
+ * <p>
+ * 本地替代实现：只识别 EICAR 测试签名，用于验证扫描、下线流程。
+ * 命中的文件标记为无效并清除缓存，后续处理器不再执行。
+ *
+ * @author DaoDao
+ */
+@Slf4j
+@Order(200)
+@Component
+public class ScanProcessor implements FileProcessor {
+
+    private static final byte[] EICAR = "X5O!P%@AP[4\\PZX54(P^)7CC)7}$EICAR-STANDARD-ANTIVIRUS-TEST-FILE!$H+H*".getBytes(StandardCharsets.US_ASCII);
+
+    @Resource
+    private AppConfig appConfig;
+
+    @Resource
+    private FileInfoRepository fileInfoRepository;
+
+    @Resource
+    private CacheHelper cacheHelper;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Override
+    public String name() {
+        return "scan";
+    }
+
+    @Override
+    public boolean supports(FileInfo fileInfo) {
+        return appConfig.getFileScan();
+    }
+
+    @Override
+    public void process(FileInfo fileInfo, FileStore store, String key) throws IOException {
+        boolean infected;
+        try (InputStream is = store.get(key, 0L, fileInfo.getSize())) {
+            infected = contains(is, EICAR, (int) appConfig.getFileBufferSize().toBytes());
+        }
+        if (!infected) {
+            return;
+        }
+        log.warn("infected file: {}, {}", fileInfo.getId(), fileInfo.getOrigin());
+        meterRegistry.counter("zero.file.scan.infected").increment();
+        fileInfo.setValid(Boolean.FALSE);
+        fileInfo.setVersion(fileInfoRepository.save(fileInfo).getVersion());
+        cacheHelper.evict(CacheConstant.FILE_INFO + fileInfo.getId());
+    }
+
+    /**
+     * 数据流中是否包含签名，保留上一块末尾的 signature.length - 1 个字节，签名跨块时也能匹配
+     */
+    static boolean contains(InputStream is, byte[] signature, int bufferSize) throws IOException {
+        int keep = signature.length - 1;
+        byte[] buffer = new byte[Math.max(bufferSize, signature.length) + keep];
+        int length = 0;
+        int n;
+        while ((n = is.read(buffer, length, buffer.length - length)) != -1) {
+            length += n;
+            if (length < buffer.length) {
+                continue;
+            }
+            if (indexOf(buffer, length, signature) >= 0) {
+                return true;
+            }
+            System.arraycopy(buffer, length - keep, buffer, 0, keep);
+            length = keep;
+        }
+        return indexOf(buffer, length, signature) >= 0;
+    }
+
+    private static int indexOf(byte[] buffer, int length, byte[] signature) {
+        for (int i = 0; i + signature.length <= length; i++) {
+            if (buffer[i] == signature[0] && Arrays.equals(buffer, i, i + signature.length, signature, 0, signature.length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,63 @@
+package run.ice.zero.server.repository;
+
+import jakarta.persistence.LockModeType;
+import lombok.NonNull;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import run.ice.zero.server.entity.FileBlob;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * @author DaoDao
+ */
+@Repository
+public interface FileBlobRepository extends JpaRepository<@NonNull FileBlob, @NonNull String> {
+
+    /**
+     * 增加引用计数，不存在时插入，引用计数为 1
+     *
+     * @param hash SHA-256 摘要
+     * @param size 文件大小
+     * @return 影响行数：1 表示新插入，2 表示已存在
+     */
+    @Modifying
+    @Query(value = "INSERT INTO zero_tiny.file_blob (hash, size, refs) VALUES (:hash, :size, 1) ON DUPLICATE KEY UPDATE refs = refs + 1", nativeQuery = true)
+    int retain(@NonNull @Param("hash") String hash, @NonNull @Param("size") Long size);
+
+    /**
+     * 减少引用计数
+     *
+     * @param hash SHA-256 摘要
+     * @return 影响行数
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE FileBlob b SET b.refs = b.refs - 1 WHERE b.hash = :hash AND b.refs > 0")
+    int release(@NonNull @Param("hash") String hash);
+
+    /**
+     * 加行锁查询，用于安全释放
+     *
+     * @param hash SHA-256 摘要
+     * @return FileBlob
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM FileBlob b WHERE b.hash = :hash")
+    Optional<FileBlob> lock(@NonNull @Param("hash") String hash);
+
+    /**
+     * 已存在的摘要
+     *
+     * @param hashes SHA-256 摘要
+     * @return 存在的摘要
+     */
+    @Query("SELECT b.hash FROM FileBlob b WHERE b.hash IN :hashes")
+    List<String> hashes(@NonNull @Param("hashes") Collection<String> hashes);
+
+}
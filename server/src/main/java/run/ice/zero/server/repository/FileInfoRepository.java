@@ -1,15 +1,71 @@
 package run.ice.zero.server.repository;
 
 import lombok.NonNull;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import run.ice.zero.server.entity.FileInfo;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
 /**
  * @author DaoDao
  */
 @Repository
 public interface FileInfoRepository extends JpaRepository<@NonNull FileInfo, @NonNull String>, JpaSpecificationExecutor<@NonNull FileInfo> {
 
+    /**
+     * 按 id 分页（keyset）查询无效的文件
+     *
+     * @param after    上一页最后一个 id，第一页为空字符串
+     * @param pageable 数量
+     * @return 按 id 排序
+     */
+    @Query("SELECT f FROM FileInfo f WHERE f.valid = false AND f.id > :after ORDER BY f.id")
+    List<FileInfo> invalid(@NonNull @Param("after") String after, @NonNull Pageable pageable);
+
+    /**
+     * 按 id 分页（keyset）查询创建时间不早于 since 的 id，用于构建布隆过滤器
+     *
+     * @param since    创建时间下限
+     * @param after    上一页最后一个 id，第一页为空字符串
+     * @param pageable 数量
+     * @return 按 id 排序
+     */
+    @Query("SELECT f.id FROM FileInfo f WHERE f.createTime >= :since AND f.id > :after ORDER BY f.id")
+    List<String> idsSince(@NonNull @Param("since") LocalDateTime since, @NonNull @Param("after") String after, @NonNull Pageable pageable);
+
+    /**
+     * 目录中存在记录的文件名（包括无效的文件）
+     *
+     * @param path  路径
+     * @param names 文件名
+     * @return 存在的文件名
+     */
+    @Query("SELECT f.name FROM FileInfo f WHERE f.path = :path AND f.name IN :names")
+    List<String> names(@NonNull @Param("path") String path, @NonNull @Param("names") Collection<String> names);
+
+    /**
+     * 有效文件引用的摘要
+     *
+     * @param hashes SHA-256 摘要
+     * @return 存在的摘要
+     */
+    @Query("SELECT DISTINCT f.hash FROM FileInfo f WHERE f.valid = true AND f.hash IN :hashes")
+    List<String> hashes(@NonNull @Param("hashes") Collection<String> hashes);
+
+    /**
+     * 有效文件的 id
+     *
+     * @param ids id
+     * @return 存在的 id
+     */
+    @Query("SELECT f.id FROM FileInfo f WHERE f.valid = true AND f.id IN :ids")
+    List<String> ids(@NonNull @Param("ids") Collection<String> ids);
+
 }
@@ -0,0 +1,69 @@
+package run.ice.zero.server.repository;
+
+import lombok.NonNull;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import run.ice.zero.server.entity.FilePack;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * @author DaoDao
+ */
+@Repository
+public interface FilePackRepository extends JpaRepository<@NonNull FilePack, @NonNull String> {
+
+    Optional<FilePack> findByIdAndValid(@NonNull String id, @NonNull Boolean valid);
+
+    /**
+     * 标记为无效，空间由压缩任务回收
+     *
+     * @param id key
+     * @return 影响行数
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE FilePack p SET p.valid = false WHERE p.id = :id AND p.valid = true")
+    int invalidate(@NonNull @Param("id") String id);
+
+    List<FilePack> findBySegmentAndValid(@NonNull Integer segment, @NonNull Boolean valid);
+
+    /**
+     * 各段文件的有效数据量
+     *
+     * @return [segment, live]
+     */
+    @Query("SELECT p.segment, SUM(p.length) FROM FilePack p WHERE p.valid = true GROUP BY p.segment")
+    List<Object[]> live();
+
+    /**
+     * 压缩时移动到新位置，已被删除（valid = false）或已移动时不更新
+     *
+     * @param id       key
+     * @param from     原段文件序号
+     * @param segment  新段文件序号
+     * @param position 新偏移量
+     * @return 影响行数
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE FilePack p SET p.segment = :segment, p.position = :position WHERE p.id = :id AND p.segment = :from AND p.valid = true")
+    int relocate(@NonNull @Param("id") String id, @NonNull @Param("from") Integer from, @NonNull @Param("segment") Integer segment, @NonNull @Param("position") Long position);
+
+    /**
+     * 删除段文件中已标记无效的索引
+     *
+     * @param segment 段文件序号
+     * @return 影响行数
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM FilePack p WHERE p.segment = :segment AND p.valid = false")
+    int purge(@NonNull @Param("segment") Integer segment);
+
+}
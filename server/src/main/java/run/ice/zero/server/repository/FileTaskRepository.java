@@ -0,0 +1,56 @@
+package run.ice.zero.server.repository;
+
+import lombok.NonNull;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import run.ice.zero.server.entity.FileTask;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * @author DaoDao
+ */
+@Repository
+public interface FileTaskRepository extends JpaRepository<@NonNull FileTask, @NonNull String> {
+
+    /**
+     * 到期的待处理任务
+     *
+     * @param status   状态
+     * @param now      当前时间
+     * @param pageable 数量
+     * @return 按下次处理时间排序
+     */
+    List<FileTask> findByStatusAndNextTimeLessThanEqualOrderByNextTime(@NonNull Integer status, @NonNull LocalDateTime now, @NonNull Pageable pageable);
+
+    /**
+     * 领取任务，多个实例同时领取时只有一个成功
+     *
+     * @param id  任务 ID
+     * @param now 当前时间
+     * @return 影响行数
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE FileTask t SET t.status = 1, t.updateTime = :now WHERE t.id = :id AND t.status = 0")
+    int claim(@NonNull @Param("id") String id, @NonNull @Param("now") LocalDateTime now);
+
+    /**
+     * 处理中超时（实例退出）的任务重新放回队列
+     *
+     * @param before 领取时间早于该时间
+     * @param now    当前时间
+     * @return 影响行数
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE FileTask t SET t.status = 0, t.updateTime = :now WHERE t.status = 1 AND t.updateTime < :before")
+    int recover(@NonNull @Param("before") LocalDateTime before, @NonNull @Param("now") LocalDateTime now);
+
+}
@@ -1,11 +1,16 @@
 package run.ice.zero.server.repository;
 
 import lombok.NonNull;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import run.ice.zero.server.entity.User;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -22,4 +27,15 @@ public interface UserRepository extends JpaRepository<@NonNull User, @NonNull Lo
      */
     Optional<User> findByUsername(@NonNull String username);
 
+    /**
+     * 按 id 分页（keyset）查询创建时间不早于 since 的 id，用于构建布隆过滤器
+     *
+     * @param since    创建时间下限
+     * @param after    上一页最后一个 id，第一页为 0
+     * @param pageable 数量
+     * @return 按 id 排序
+     */
+    @Query("SELECT u.id FROM User u WHERE u.createTime >= :since AND u.id > :after ORDER BY u.id")
+    List<Long> idsSince(@NonNull @Param("since") LocalDateTime since, @NonNull @Param("after") Long after, @NonNull Pageable pageable);
+
 }
@@ -0,0 +1,111 @@
+package run.ice.zero.server.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import run.ice.zero.server.entity.FileBlob;
+import run.ice.zero.server.error.AppException;
+import run.ice.zero.server.error.ServerError;
+import run.ice.zero.server.repository.FileBlobRepository;
+import run.ice.zero.server.store.LocalFileStore;
+import run.ice.zero.server.util.FileUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * 内容寻址存储
+ * <p>
+ * 相同内容（SHA-256 相同）只存储一份，路径为 root/blob/ab/cd/abcd...，
+ * 保存在本地存储（{@link LocalFileStore}）中；FileInfo 通过 hash 引用 blob，file_blob.refs 记录引用计数。
+ *
+ * @author DaoDao
+ */
+@Slf4j
+@Service
+@Transactional
+public class BlobService {
+
+    /**
+     * FileInfo.store 取值
+     */
+    public static final String STORE = "blob";
+
+    public static final String DIRECTORY = "blob";
+
+    @Resource
+    private LocalFileStore localFileStore;
+
+    @Resource
+    private FileBlobRepository fileBlobRepository;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    /**
+     * blob 在本地存储中的 key
+     *
+     * @param hash SHA-256 摘要
+     * @return blob/ab/cd/abcd...
+     */
+    public String key(String hash) {
+        return DIRECTORY + "/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash;
+    }
+
+    /**
+     * 提交暂存文件
+     * <p>
+     * 先增加引用计数（同时持有 file_blob 行锁直到事务结束），再检查 blob 文件：
+     * 已存在则丢弃暂存文件，否则重命名为 blob。行锁保证与 {@link #release(String)} 互斥。
+     *
+     * @param part 暂存文件，与 blob 位于同一文件系统
+     * @param hash SHA-256 摘要
+     * @param size 文件大小
+     */
+    public void store(File part, String hash, long size) {
+        fileBlobRepository.retain(hash, size);
+        String key = key(hash);
+        if (null != localFileStore.stat(key)) {
+            FileUtil.delete(part);
+            meterRegistry.counter("zero.file.blob.saved").increment(size);
+            return;
+        }
+        try {
+            localFileStore.put(key, part);
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+            FileUtil.delete(part);
+            throw new AppException(ServerError.FILE_READ_WRITE_ERROR, e.getMessage());
+        }
+    }
+
+    /**
+     * 释放一个引用，引用计数归零时删除 blob 文件和记录
+     *
+     * @param hash SHA-256 摘要
+     * @return 是否删除了 blob 文件
+     */
+    public boolean release(String hash) {
+        fileBlobRepository.release(hash);
+        Optional<FileBlob> optional = fileBlobRepository.lock(hash);
+        if (optional.isEmpty()) {
+            return false;
+        }
+        FileBlob fileBlob = optional.get();
+        if (fileBlob.getRefs() > 0) {
+            return false;
+        }
+        boolean deleted = false;
+        try {
+            deleted = localFileStore.delete(key(hash));
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        }
+        fileBlobRepository.delete(fileBlob);
+        return deleted;
+    }
+
+}
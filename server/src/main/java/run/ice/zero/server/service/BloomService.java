@@ -0,0 +1,88 @@
+package run.ice.zero.server.service;
+
+import jakarta.annotation.Resource;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import run.ice.zero.server.config.AppConfig;
+import run.ice.zero.server.constant.CacheConstant;
+import run.ice.zero.server.helper.CacheHelper;
+import run.ice.zero.server.repository.FileInfoRepository;
+import run.ice.zero.server.repository.UserRepository;
+import run.ice.zero.server.util.BloomFilter;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 布隆过滤器构建
+ * <p>
+ * 定时按 id 分页（keyset）读取文件 id 和用户 id，加入 {@link CacheHelper} 的布隆过滤器。
+ * 首次读取全部记录，完成之后过滤器才用于过滤。
+ * <p>
+ * 记录不按 id 顺序提交（批量上传先分配 id、其它实例的 id 更小但提交更晚、自增 id 的并发事务），
+ * 不能从上次读到的最大 id 继续读取，否则晚提交的记录永远不会加入过滤器。
+ * 之后每次读取创建时间不早于上次读取开始时间减去 app.cache.bloom-overlap 的记录：
+ * 创建时间在写入时设置，上次读取开始时没有提交的记录，创建时间一定晚于上次读取开始时间减去事务时长，会被这次读取到。
+ * 其它实例新增的记录通过失效通知立即加入，定时读取用于补充丢失的通知。
+ * 删除的记录不会从过滤器中移除，只是多一次数据库查询（之后由墓碑拦截）。
+ *
+ * @author DaoDao
+ */
+@Service
+public class BloomService {
+
+    private static final int BATCH = 1000;
+
+    private static final LocalDateTime EPOCH = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    @Resource
+    private AppConfig appConfig;
+
+    @Resource
+    private CacheHelper cacheHelper;
+
+    @Resource
+    private FileInfoRepository fileInfoRepository;
+
+    @Resource
+    private UserRepository userRepository;
+
+    /**
+     * 上次读取的开始时间，首次读取全部记录
+     */
+    private LocalDateTime last = null;
+
+    @Scheduled(initialDelayString = "PT1S", fixedDelayString = "${app.cache.bloom-interval:PT10S}")
+    public void scan() {
+        if (!appConfig.getCacheBloom()) {
+            return;
+        }
+        LocalDateTime start = LocalDateTime.now();
+        LocalDateTime since = null == last ? EPOCH : last.minus(appConfig.getCacheBloomOverlap());
+        BloomFilter files = cacheHelper.bloom(CacheConstant.FILE_INFO);
+        String fileAfter = "";
+        while (true) {
+            List<String> ids = fileInfoRepository.idsSince(since, fileAfter, PageRequest.ofSize(BATCH));
+            ids.forEach(files::add);
+            if (ids.size() < BATCH) {
+                break;
+            }
+            fileAfter = ids.getLast();
+        }
+        cacheHelper.ready(CacheConstant.FILE_INFO);
+        BloomFilter users = cacheHelper.bloom(CacheConstant.USER);
+        Long userAfter = 0L;
+        while (true) {
+            List<Long> ids = userRepository.idsSince(since, userAfter, PageRequest.ofSize(BATCH));
+            ids.forEach(id -> users.add(String.valueOf(id)));
+            if (ids.size() < BATCH) {
+                break;
+            }
+            userAfter = ids.getLast();
+        }
+        cacheHelper.ready(CacheConstant.USER);
+        last = start;
+    }
+
+}
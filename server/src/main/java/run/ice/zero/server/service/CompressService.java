@@ -0,0 +1,265 @@
+package run.ice.zero.server.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import run.ice.zero.server.config.AppConfig;
+import run.ice.zero.server.entity.FileInfo;
+import run.ice.zero.server.processor.FileProcessor;
+import run.ice.zero.server.store.FileRegion;
+import run.ice.zero.server.store.FileSource;
+import run.ice.zero.server.store.FileStore;
+import run.ice.zero.server.store.LocalFileStore;
+import run.ice.zero.server.util.FileUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 预压缩
+ * <p>
+ * 可压缩的文件（文本、JSON、XML、SVG 等）在上传后由处理任务压缩，首次访问时不存在则异步压缩，
+ * 保存在本地存储 gzip/ 目录下，请求时根据 Accept-Encoding 选择输出。
+ * 压缩效果不明显（压缩后大于原文件的 90%）时写入空文件作为标记，不再压缩。
+ *
+ * @author DaoDao
+ */
+@Slf4j
+@Order(500)
+@Service
+public class CompressService implements FileProcessor {
+
+    public static final String GZIP = "gzip";
+
+    public static final String DIRECTORY = "gzip";
+
+    private static final Set<String> TYPES = Set.of(
+            "application/json", "application/xml", "application/javascript", "application/x-javascript",
+            "application/x-yaml", "application/yaml", "application/x-ndjson", "image/svg+xml"
+    );
+
+    @Resource
+    private AppConfig appConfig;
+
+    @Resource
+    private LocalFileStore localFileStore;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * 已提交、尚未完成的压缩任务
+     */
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(1000),
+                r -> {
+                    Thread thread = new Thread(r, "gzip-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 是否需要压缩
+     *
+     * @param type 文件类型
+     * @param size 文件大小
+     * @return 是否可压缩
+     */
+    public boolean compressible(String type, long size) {
+        if (!appConfig.getFileGzip() || null == type || size < appConfig.getFileGzipMinSize().toBytes()) {
+            return false;
+        }
+        return textual(type);
+    }
+
+    /**
+     * 是否为文本类的类型（文本、JSON、XML、SVG 等），其它类型（图片、视频、压缩包等）通常已经压缩过
+     *
+     * @param type 文件类型
+     * @return 是否为文本
+     */
+    public static boolean textual(String type) {
+        if (null == type) {
+            return false;
+        }
+        int i = type.indexOf(';');
+        String t = (i < 0 ? type : type.substring(0, i)).trim().toLowerCase();
+        return t.startsWith("text/") || TYPES.contains(t) || t.endsWith("+json") || t.endsWith("+xml");
+    }
+
+    /**
+     * 客户端是否接受 gzip，q=0 表示不接受
+     *
+     * @param acceptEncoding Accept-Encoding 请求头
+     * @return 是否接受
+     */
+    public static boolean accept(String acceptEncoding) {
+        if (null == acceptEncoding || acceptEncoding.isEmpty()) {
+            return false;
+        }
+        Double gzip = null;
+        Double any = null;
+        for (String part : acceptEncoding.split(",")) {
+            String[] values = part.trim().split(";");
+            String coding = values[0].trim();
+            double q = 1.0;
+            for (int i = 1; i < values.length; i++) {
+                String v = values[i].trim();
+                if (v.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(v.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0.0;
+                    }
+                }
+            }
+            if (GZIP.equalsIgnoreCase(coding)) {
+                gzip = q;
+            } else if ("*".equals(coding)) {
+                any = q;
+            }
+        }
+        if (null != gzip) {
+            return gzip > 0;
+        }
+        return null != any && any > 0;
+    }
+
+    /**
+     * 压缩后的文件，不存在时提交压缩任务
+     *
+     * @param fileInfo FileInfo
+     * @param store    原文件所在存储
+     * @param key      原文件 key
+     * @return 尚未压缩或者不需要压缩时返回 null
+     */
+    public FileSource gzip(FileInfo fileInfo, FileStore store, String key) {
+        String gzip = key(fileInfo);
+        if (null == localFileStore.stat(gzip)) {
+            execute(fileInfo, store, key);
+            return null;
+        }
+        FileRegion region;
+        try {
+            region = localFileStore.region(gzip);
+        } catch (IOException e) {
+            return null;
+        }
+        if (region.getLength() == 0) {
+            return null;
+        }
+        return new FileSource(localFileStore, gzip, region, region.getLength());
+    }
+
+    @Override
+    public String name() {
+        return "gzip";
+    }
+
+    @Override
+    public boolean supports(FileInfo fileInfo) {
+        return compressible(fileInfo.getType(), fileInfo.getSize());
+    }
+
+    /**
+     * 上传后在处理任务中压缩，已存在时跳过
+     */
+    @Override
+    public void process(FileInfo fileInfo, FileStore store, String key) throws IOException {
+        String gzip = key(fileInfo);
+        if (null != localFileStore.stat(gzip)) {
+            return;
+        }
+        compress(fileInfo, store, key, gzip);
+    }
+
+    private void execute(FileInfo fileInfo, FileStore store, String key) {
+        String gzip = key(fileInfo);
+        if (!pending.add(gzip)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    compress(fileInfo, store, key, gzip);
+                } catch (Exception e) {
+                    log.warn("gzip failed: {}, {}", key, e.getMessage());
+                } finally {
+                    pending.remove(gzip);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(gzip);
+            log.debug("gzip queue is full: {}", key);
+        }
+    }
+
+    private void compress(FileInfo fileInfo, FileStore store, String key, String gzip) throws IOException {
+        File part = new File(appConfig.getFilePath() + FileUtil.TMP, UUID.randomUUID() + FileUtil.PART_SUFFIX);
+        Files.createDirectories(part.getParentFile().toPath());
+        try {
+            try (InputStream is = store.get(key, 0L, fileInfo.getSize());
+                 OutputStream os = new GZIPOutputStream(Files.newOutputStream(part.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), 64 * 1024) {
+                     {
+                         def.setLevel(Deflater.BEST_COMPRESSION);
+                     }
+                 }) {
+                is.transferTo(os);
+            }
+            long size = part.length();
+            if (size > fileInfo.getSize() * 0.9) {
+                localFileStore.put(gzip, InputStream.nullInputStream(), 0L);
+                log.debug("gzip skip: {}, {} / {}", key, size, fileInfo.getSize());
+                return;
+            }
+            localFileStore.put(gzip, part);
+            meterRegistry.counter("zero.file.gzip.saved").increment(fileInfo.getSize() - size);
+            log.debug("gzip: {}, {} / {}", key, size, fileInfo.getSize());
+        } finally {
+            FileUtil.delete(part);
+        }
+    }
+
+    /**
+     * 压缩文件 key：gzip/ab/cd/{hash 或 id}.gz
+     */
+    private static String key(FileInfo fileInfo) {
+        String name = null != fileInfo.getHash() ? fileInfo.getHash() : fileInfo.getId();
+        return FileUtil.key(DIRECTORY, name, ".gz");
+    }
+
+}
@@ -0,0 +1,31 @@
+package run.ice.zero.server.service;
+
+import jakarta.annotation.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import run.ice.zero.server.config.DiskConfig;
+import run.ice.zero.server.store.DiskRouter;
+
+/**
+ * 多磁盘健康检查
+ *
+ * @author DaoDao
+ */
+@Service
+public class DiskService {
+
+    @Resource
+    private DiskConfig diskConfig;
+
+    @Resource
+    private DiskRouter diskRouter;
+
+    @Scheduled(initialDelayString = "${app.file.disk.check-interval:PT30S}", fixedDelayString = "${app.file.disk.check-interval:PT30S}")
+    public void check() {
+        if (diskRouter.isEmpty()) {
+            return;
+        }
+        diskRouter.check(diskConfig.getMinFree().toBytes());
+    }
+
+}
@@ -1,184 +1,721 @@
 package run.ice.zero.server.service;
 
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.data.domain.Example;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
 import run.ice.zero.server.config.AppConfig;
 import run.ice.zero.server.constant.CacheConstant;
 import run.ice.zero.server.entity.FileInfo;
+import run.ice.zero.server.entity.FileTask;
 import run.ice.zero.server.error.AppException;
 import run.ice.zero.server.error.ServerError;
+import run.ice.zero.server.helper.CacheHelper;
+import run.ice.zero.server.helper.HotCacheHelper;
+import run.ice.zero.server.helper.OutputHelper;
+import run.ice.zero.server.model.file.FileBatchData;
+import run.ice.zero.server.model.file.FileBatchParam;
 import run.ice.zero.server.model.file.FileData;
 import run.ice.zero.server.model.file.FileParam;
+import run.ice.zero.server.model.file.FileUploadData;
+import run.ice.zero.server.model.file.FileUploadError;
+import run.ice.zero.server.processor.FileProcessor;
 import run.ice.zero.server.repository.FileInfoRepository;
+import run.ice.zero.server.repository.FileTaskRepository;
+import run.ice.zero.server.store.DiskRouter;
+import run.ice.zero.server.store.FileRegion;
+import run.ice.zero.server.store.FileSource;
+import run.ice.zero.server.store.FileStore;
+import run.ice.zero.server.store.LocalFileStore;
+import run.ice.zero.server.store.PackFileStore;
 import run.ice.zero.server.util.FileUtil;
+import run.ice.zero.server.util.IdGenerator;
+import run.ice.zero.server.util.ImageUtil;
+import run.ice.zero.server.util.MimeUtil;
+import run.ice.zero.server.util.NearCache;
 import run.ice.zero.server.util.RadixUtil;
 
-import java.io.*;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
-import java.security.SecureRandom;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 @Slf4j
 @Service
 @Transactional
 public class FileService {
 
+    /**
+     * FileInfo 缓存时间
+     */
+    private static final Duration FILE_INFO_EXPIRE = Duration.ofDays(7L);
+
     @Resource
     private AppConfig appConfig;
 
+    @Resource
+    private IdGenerator idGenerator;
+
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
     @Resource
     private FileInfoRepository fileInfoRepository;
 
+    @Resource
+    private OutputHelper outputHelper;
+
+    @Resource
+    private HotCacheHelper hotCacheHelper;
+
+    @Resource
+    private BlobService blobService;
+
+    @Resource
+    private ImageService imageService;
+
+    @Resource
+    private MarkService markService;
+
+    @Resource
+    private CompressService compressService;
+
+    @Resource
+    private List<FileStore> fileStores;
+
+    @Resource
+    private DiskRouter diskRouter;
+
+    @Resource
+    private FileTaskRepository fileTaskRepository;
+
+    @Resource
+    private List<FileProcessor> fileProcessors;
+
+    @Resource
+    private CacheHelper cacheHelper;
+
+    @Resource
+    private PlatformTransactionManager transactionManager;
+
+    private NearCache<FileInfo> fileInfoCache;
+
+    @PostConstruct
+    public void init() {
+        fileInfoCache = cacheHelper.cache(CacheConstant.FILE_INFO);
+    }
+
     public FileData info(FileParam param) {
+        FileInfo fileInfo = fileInfo(param);
+        FileData data = new FileData();
+        BeanUtils.copyProperties(fileInfo, data);
+        return data;
+    }
+
+    private FileInfo fileInfo(FileParam param) {
         String id = param.getId();
         String code = param.getCode();
-        String x = RadixUtil.convert(id, 10, 62);
-        if (!code.equals(x)) {
+        if (!RadixUtil.matches(id, code)) {
             throw new AppException(ServerError.FILE_CODE_ERROR, param.toJson());
         }
-        FileData data = new FileData();
-        String key = CacheConstant.FILE_INFO + id;
-        String json = stringRedisTemplate.opsForValue().get(key);
-        FileInfo fileInfo;
-        if (null != json && !json.isEmpty()) {
-            fileInfo = new FileInfo().ofJson(json);
-        } else {
-            fileInfo = new FileInfo();
-            fileInfo.setId(id);
-            fileInfo.setValid(Boolean.TRUE);
-            Optional<FileInfo> optional = fileInfoRepository.findOne(Example.of(fileInfo));
-            if (optional.isEmpty()) {
-                throw new AppException(ServerError.FILE_NOT_EXIST, id);
+        FileInfo fileInfo = cacheHelper.get(CacheConstant.FILE_INFO, id, FILE_INFO_EXPIRE, json -> new FileInfo().ofJson(json), () -> {
+            FileInfo probe = new FileInfo();
+            probe.setId(id);
+            probe.setValid(Boolean.TRUE);
+            return fileInfoRepository.findOne(Example.of(probe)).orElse(null);
+        });
+        if (null == fileInfo) {
+            throw new AppException(ServerError.FILE_NOT_EXIST, id);
+        }
+        return fileInfo;
+    }
+
+    /**
+     * 批量查询：缓存一次 MGET，未命中的一次 IN 查询，回填缓存一次 pipeline
+     * <p>
+     * code 错误或者不存在的文件不返回，不抛出异常。
+     *
+     * @param param FileBatchParam
+     * @return FileBatchData
+     */
+    public FileBatchData info(FileBatchParam param) {
+        Set<String> ids = new LinkedHashSet<>();
+        for (FileParam p : param.getFiles()) {
+            if (RadixUtil.matches(p.getId(), p.getCode())) {
+                ids.add(p.getId());
             }
-            fileInfo = optional.get();
-            stringRedisTemplate.opsForValue().set(key, fileInfo.toJson(), Duration.ofDays(7L));
         }
-        BeanUtils.copyProperties(fileInfo, data);
+        Map<String, FileInfo> found = fileInfos(ids);
+        List<FileData> files = new ArrayList<>();
+        for (String id : ids) {
+            FileInfo fileInfo = found.get(id);
+            if (null != fileInfo) {
+                FileData data = new FileData();
+                BeanUtils.copyProperties(fileInfo, data);
+                files.add(data);
+            }
+        }
+        FileBatchData data = new FileBatchData();
+        data.setFiles(files);
         return data;
     }
 
+    /**
+     * 先查近缓存，其余的缓存一次 MGET，未命中（排除墓碑和布隆过滤器判断不存在的）的一次 IN 查询，回填缓存一次 pipeline
+     *
+     * @param ids 文件 id
+     * @return id -> 有效的 FileInfo，不存在的 id 不包含
+     */
+    private Map<String, FileInfo> fileInfos(Collection<String> ids) {
+        Map<String, FileInfo> found = new HashMap<>();
+        List<String> remote = new ArrayList<>();
+        Map<String, Long> generations = new HashMap<>();
+        for (String id : ids) {
+            String key = CacheConstant.FILE_INFO + id;
+            FileInfo fileInfo = fileInfoCache.get(key);
+            if (null != fileInfo) {
+                found.put(id, fileInfo);
+            } else {
+                remote.add(id);
+                generations.put(id, fileInfoCache.generation(key));
+            }
+        }
+        if (remote.isEmpty()) {
+            return found;
+        }
+        List<String> keys = remote.stream().map(id -> CacheConstant.FILE_INFO + id).toList();
+        List<String> jsons = stringRedisTemplate.opsForValue().multiGet(keys);
+        List<FileInfo> list = new ArrayList<>();
+        List<String> misses = new ArrayList<>();
+        for (int i = 0; i < remote.size(); i++) {
+            String json = null == jsons ? null : jsons.get(i);
+            if (CacheConstant.TOMBSTONE.equals(json)) {
+                continue;
+            }
+            if (null != json) {
+                list.add(new FileInfo().ofJson(json));
+            } else if (cacheHelper.known(CacheConstant.FILE_INFO, remote.get(i))) {
+                misses.add(remote.get(i));
+            }
+        }
+        if (!misses.isEmpty()) {
+            List<FileInfo> loaded = fileInfoRepository.findAllById(misses).stream()
+                    .filter(f -> Boolean.TRUE.equals(f.getValid()))
+                    .toList();
+            cache(loaded);
+            list.addAll(loaded);
+        }
+        for (FileInfo fileInfo : list) {
+            found.put(fileInfo.getId(), fileInfo);
+            fileInfoCache.put(CacheConstant.FILE_INFO + fileInfo.getId(), fileInfo, generations.get(fileInfo.getId()));
+        }
+        return found;
+    }
+
+    /**
+     * 使用 pipeline 批量写入缓存
+     */
+    private void cache(List<FileInfo> list) {
+        if (list.isEmpty()) {
+            return;
+        }
+        RedisSerializer<String> serializer = stringRedisTemplate.getStringSerializer();
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (FileInfo fileInfo : list) {
+                byte[] key = serializer.serialize(CacheConstant.FILE_INFO + fileInfo.getId());
+                byte[] value = serializer.serialize(fileInfo.toJson());
+                assert key != null && value != null;
+                connection.stringCommands().set(key, value, Expiration.from(FILE_INFO_EXPIRE), RedisStringCommands.SetOption.upsert());
+            }
+            return null;
+        });
+    }
+
     public FileData upload(MultipartFile multipartFile) {
-        File file = transfer(multipartFile);
-        assert file != null;
-        FileInfo fileInfo = store(file);
-        fileInfo = fileInfoRepository.save(fileInfo);
+        FileInfo fileInfo = fileInfoRepository.save(write(multipartFile, idGenerator.next()));
+        submit(List.of(fileInfo));
+        cacheHelper.created(CacheConstant.FILE_INFO, List.of(fileInfo.getId()));
         FileData data = new FileData();
         BeanUtils.copyProperties(fileInfo, data);
         return data;
     }
 
-    public File download(FileParam param) {
-        FileData data = info(param);
-        String root = appConfig.getFilePath();
-        String path = data.getPath();
-        String name = data.getName();
-        File file = new File(root + path + File.separator + name);
-        if (file.exists() && file.isFile()) {
-            return file;
-        } else {
-            throw new AppException(ServerError.FILE_NOT_EXIST, param.toJson());
+    /**
+     * 一次上传多个文件
+     * <p>
+     * 每个文件在虚拟线程中写入存储，同时写入的文件数不超过 app.file.upload-concurrency，
+     * 全部写入后一次批量保存 FileInfo 和处理任务。单个文件失败不影响其它文件，在 errors 中返回。
+     * 事务回滚时回收已经写入存储的文件，见 {@link #discardOnRollback(List)}。
+     *
+     * @param multipartFiles 文件
+     * @return FileUploadData
+     */
+    public FileUploadData upload(List<MultipartFile> multipartFiles) {
+        int max = appConfig.getFileUploadBatchMax();
+        if (multipartFiles.size() > max) {
+            throw new AppException(ServerError.UPLOAD_TOO_MANY, multipartFiles.size() + " > " + max);
+        }
+        Semaphore semaphore = new Semaphore(Math.max(appConfig.getFileUploadConcurrency(), 1));
+        long[] ids = idGenerator.next(multipartFiles.size());
+        List<Future<FileInfo>> futures = new ArrayList<>(multipartFiles.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < multipartFiles.size(); i++) {
+                MultipartFile multipartFile = multipartFiles.get(i);
+                long id = ids[i];
+                futures.add(executor.submit(() -> {
+                    semaphore.acquire();
+                    try {
+                        return write(multipartFile, id);
+                    } finally {
+                        semaphore.release();
+                    }
+                }));
+            }
+        }
+        List<FileInfo> list = new ArrayList<>();
+        List<FileUploadError> errors = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                list.add(futures.get(i).get());
+            } catch (InterruptedException | ExecutionException e) {
+                Throwable cause = e instanceof ExecutionException && null != e.getCause() ? e.getCause() : e;
+                FileUploadError error = new FileUploadError();
+                error.setIndex(i);
+                error.setOrigin(multipartFiles.get(i).getOriginalFilename());
+                if (cause instanceof AppException appException) {
+                    error.setCode(appException.getCode());
+                    error.setMessage(appException.getMessage());
+                } else {
+                    log.error(cause.getMessage(), cause);
+                    error.setCode(ServerError.FILE_READ_WRITE_ERROR.getCode());
+                    error.setMessage(cause.getMessage());
+                }
+                errors.add(error);
+            }
+        }
+        discardOnRollback(list);
+        list = fileInfoRepository.saveAll(list);
+        submit(list);
+        cacheHelper.created(CacheConstant.FILE_INFO, list.stream().map(FileInfo::getId).toList());
+        List<FileData> files = new ArrayList<>(list.size());
+        for (FileInfo fileInfo : list) {
+            FileData data = new FileData();
+            BeanUtils.copyProperties(fileInfo, data);
+            files.add(data);
         }
+        FileUploadData data = new FileUploadData();
+        data.setFiles(files);
+        data.setErrors(errors);
+        return data;
     }
 
-    private File transfer(MultipartFile multipartFile) {
-        LocalDateTime localDateTime = LocalDateTime.now();
-        String path = localDateTime.format(DateTimeFormatter.ofPattern("yyyy/MM/dd/HHmmss")) + String.format("%09d", localDateTime.getNano());
-        String directory = File.separator + "tmp" + File.separator + path;
-        File dir = new File(directory);
-        if (!dir.exists() || !dir.isDirectory()) {
-            boolean b = dir.mkdirs();
-            assert b;
-        }
-        String originalFilename = multipartFile.getOriginalFilename();
-        assert originalFilename != null;
-        String fileName = originalFilename.replace("/", "_");
-        File file = new File(new File(directory).getAbsolutePath() + File.separator + fileName);
-        try {
-            multipartFile.transferTo(file);
-        } catch (IOException e) {
-            log.error(e.getMessage(), e);
-            return null;
+    /**
+     * 事务回滚（包括批量保存 FileInfo 失败）之后回收已经写入存储的文件
+     * <p>
+     * 虚拟线程中写入的 blob 引用计数和打包索引在各自的事务中已经提交，不随请求的事务回滚；
+     * 回滚之后在新的事务中逐个释放，失败时只记录日志（本地存储的孤儿文件由 SweepService 回收）。
+     *
+     * @param list 已经写入存储、尚未保存的 FileInfo
+     */
+    private void discardOnRollback(List<FileInfo> list) {
+        if (list.isEmpty() || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
         }
-        return file;
+        List<FileInfo> written = List.copyOf(list);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_ROLLED_BACK) {
+                    return;
+                }
+                TransactionTemplate template = new TransactionTemplate(transactionManager);
+                template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+                for (FileInfo fileInfo : written) {
+                    try {
+                        template.executeWithoutResult(s -> discard(fileInfo));
+                    } catch (Exception e) {
+                        log.error("discard failed: {}, {}", fileInfo.getId(), e.getMessage());
+                    }
+                }
+            }
+        });
     }
 
-    private FileInfo store(File originFile) {
+    /**
+     * 写入暂存文件并提交到存储，返回未保存的 FileInfo
+     */
+    private FileInfo write(MultipartFile multipartFile, long id) {
+        String originalFilename = multipartFile.getOriginalFilename();
+        String origin = (null == originalFilename || originalFilename.isEmpty()) ? "file" : originalFilename.replace("/", "_");
         /*
-         * 1. 预定义文件的各项属性
+         * 写入之前按文件 id 确定存储，暂存文件与正式文件在同一文件系统（多磁盘时为选中磁盘的 tmp 目录）；
+         * 去重模式下 blob 保存在本地存储
          */
-        // 原文件名称
-        String origin = originFile.getName();
-        // 扩展名
-        String extension = FileUtil.extension(origin);
-        String ext = (null == extension || extension.isEmpty()) ? "" : ("." + extension);
-        // id
-        String id = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmssSSS")) + new SecureRandom().nextInt(10);
-        String code = RadixUtil.convert(id, 10, 62);
-        // time
-        LocalDateTime localDateTime = LocalDateTime.now();
-        String nano = String.format("%09d", localDateTime.getNano());
-        // 根目录
-        String root = appConfig.getFilePath();
-        // 路径
-        String path = localDateTime.format(DateTimeFormatter.ofPattern("yyyy/MM/dd"));
-        // 名称
-        String name = localDateTime.format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss")) + nano + ext;
-        // 目录
-        String directory = root + path;
+        String key = String.valueOf(id);
+        FileStore target = appConfig.getFileDedup() ? fileStore(LocalFileStore.NAME) : target(key);
+        File part = part(target, key);
         /*
-         * 2. 创建文件目录
+         * 上传的数据流只写一次：写入暂存文件，同时计算大小、类型和 SHA-256 摘要
          */
-        File dir = new File(directory);
+        MessageDigest digest = FileUtil.sha256();
+        String type;
+        long size = 0L;
+        try (InputStream is = multipartFile.getInputStream();
+             FileChannel channel = FileChannel.open(part.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            byte[] head = is.readNBytes(FileUtil.HEAD_SIZE);
+            type = FileUtil.contentType(head, origin);
+            digest.update(head);
+            size += FileUtil.write(channel, head, head.length);
+            byte[] buffer = new byte[(int) appConfig.getFileBufferSize().toBytes()];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+                size += FileUtil.write(channel, buffer, n);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+            FileUtil.delete(part);
+            throw new AppException(ServerError.FILE_READ_WRITE_ERROR, e.getMessage());
+        }
+        String hash = HexFormat.of().formatHex(digest.digest());
+        return store(id, part, target, origin, type, size, hash);
+    }
+
+    /**
+     * 将暂存文件提交为正式文件并保存 FileInfo
+     *
+     * @param id     文件 id，选择目标存储时使用的 id
+     * @param part   暂存文件，见 {@link #part(FileStore, String)}
+     * @param target 目标存储，见 {@link #target(String)}
+     * @param origin 源文件名
+     * @param type   文件类型
+     * @param size   文件大小
+     * @param hash   SHA-256 摘要，未知时为 null
+     * @return FileData
+     */
+    public FileData upload(long id, File part, FileStore target, String origin, String type, long size, String hash) {
+        FileInfo fileInfo = fileInfoRepository.save(store(id, part, target, origin, type, size, hash));
+        submit(List.of(fileInfo));
+        cacheHelper.created(CacheConstant.FILE_INFO, List.of(fileInfo.getId()));
+        FileData data = new FileData();
+        BeanUtils.copyProperties(fileInfo, data);
+        return data;
+    }
+
+    /**
+     * 摘要、扫描、变体、水印、压缩等由 TaskService 在后台处理，这里只在同一事务中写入任务
+     */
+    private void submit(List<FileInfo> list) {
+        List<FileTask> tasks = new ArrayList<>();
+        for (FileInfo fileInfo : list) {
+            if (fileProcessors.stream().anyMatch(p -> p.supports(fileInfo))) {
+                FileTask task = new FileTask();
+                task.setId(fileInfo.getId());
+                tasks.add(task);
+            }
+        }
+        if (!tasks.isEmpty()) {
+            fileTaskRepository.saveAll(tasks);
+        }
+    }
+
+    /**
+     * 暂存文件，与目标存储中的正式文件位于同一文件系统，写入完成后原子重命名为正式文件
+     *
+     * @param target 目标存储，见 {@link #target(String)}
+     * @param key    暂存文件标识（文件 id 或者上传会话 id）
+     * @return File
+     */
+    public File part(FileStore target, String key) {
+        return new File(tmp(target), key + FileUtil.PART_SUFFIX);
+    }
+
+    /**
+     * 暂存目录：本地存储（包括每个磁盘）为其根目录下的 tmp，其它存储使用 app.file.path 下的 tmp
+     *
+     * @param target 目标存储
+     * @return File
+     */
+    public File tmp(FileStore target) {
+        File dir = target instanceof LocalFileStore local ? local.file(FileUtil.TMP) : new File(appConfig.getFilePath() + FileUtil.TMP);
         if (!dir.exists() || !dir.isDirectory()) {
             boolean b = dir.mkdirs();
             if (!b) {
                 log.error("创建目录失败！");
             }
         }
-        File file = new File(new File(directory).getAbsolutePath() + File.separator + name);
-        /*
-         * 3. 数据写入文件
-         */
+        return dir;
+    }
+
+    /**
+     * 所有存在的暂存目录（app.file.path 和每个磁盘），用于清理
+     *
+     * @return File
+     */
+    public List<File> tmps() {
+        List<File> dirs = new ArrayList<>();
+        dirs.add(new File(appConfig.getFilePath() + FileUtil.TMP));
+        diskRouter.stores().forEach(store -> dirs.add(store.file(FileUtil.TMP)));
+        return dirs.stream().filter(File::isDirectory).toList();
+    }
+
+    /**
+     * 按名称查找存储，历史数据（store 为空）和 blob 都在本地存储中
+     *
+     * @param name FileInfo.store
+     * @return FileStore
+     */
+    public FileStore fileStore(String name) {
+        String n = (null == name || name.isEmpty() || BlobService.STORE.equals(name)) ? LocalFileStore.NAME : name;
+        FileStore disk = diskRouter.get(n);
+        if (null != disk) {
+            return disk;
+        }
+        for (FileStore fileStore : fileStores) {
+            if (fileStore.name().equals(n)) {
+                return fileStore;
+            }
+        }
+        throw new AppException(ServerError.FILE_READ_WRITE_ERROR, "unknown store : " + name);
+    }
+
+    /**
+     * 新文件的存储，在写入暂存文件之前确定：app.file.store = disk 时按文件 id 一致性哈希选择磁盘
+     *
+     * @param id 文件 id
+     * @return FileStore
+     */
+    public FileStore target(String id) {
+        if (!DiskRouter.NAME.equals(appConfig.getFileStore())) {
+            return fileStore(appConfig.getFileStore());
+        }
+        FileStore fileStore = diskRouter.select(id);
+        if (null == fileStore) {
+            throw new AppException(ServerError.FILE_READ_WRITE_ERROR, "no writable disk");
+        }
+        return fileStore;
+    }
+
+    /**
+     * 文件在存储中的 key
+     *
+     * @param fileInfo FileInfo
+     * @return key
+     */
+    public String key(FileInfo fileInfo) {
+        if (BlobService.STORE.equals(fileInfo.getStore())) {
+            return blobService.key(fileInfo.getHash());
+        }
+        return fileInfo.getPath() + "/" + fileInfo.getName();
+    }
+
+    /**
+     * 打包下载：ZIP 边读边写入响应，不在内存或磁盘中生成
+     * <p>
+     * 条目都使用 DEFLATED（CRC32 和大小写在数据之后，每个文件只读一遍）：文本类文件使用 BEST_SPEED，
+     * 其它（图片、视频、压缩包等已压缩的类型）使用 NO_COMPRESSION，只输出未压缩的块。
+     * 同名文件加序号区分。code 错误或者文件不存在时在写入响应之前抛出异常，输出过程中出错时中断连接。
+     * 不在事务中执行，输出期间不占用数据库连接。
+     *
+     * @param response HttpServletResponse
+     * @param param    FileBatchParam
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void zip(HttpServletResponse response, FileBatchParam param) {
+        Set<String> ids = new LinkedHashSet<>();
+        for (FileParam p : param.getFiles()) {
+            if (!RadixUtil.matches(p.getId(), p.getCode())) {
+                throw new AppException(ServerError.FILE_CODE_ERROR, p.toJson());
+            }
+            ids.add(p.getId());
+        }
+        Map<String, FileInfo> found = fileInfos(ids);
+        List<FileInfo> list = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            FileInfo fileInfo = found.get(id);
+            if (null == fileInfo) {
+                throw new AppException(ServerError.FILE_NOT_EXIST, id);
+            }
+            list.add(fileInfo);
+        }
+        response.setContentType("application/zip");
+        response.addHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"files.zip\"");
+        int bufferSize = (int) appConfig.getFileBufferSize().toBytes();
+        byte[] buffer = new byte[bufferSize];
+        Set<String> names = new HashSet<>();
+        try {
+            ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(response.getOutputStream(), bufferSize), StandardCharsets.UTF_8);
+            for (FileInfo fileInfo : list) {
+                FileStore fileStore = fileStore(fileInfo.getStore());
+                String key = key(fileInfo);
+                ZipEntry entry = new ZipEntry(entryName(fileInfo.getOrigin(), names));
+                if (null != fileInfo.getCreateTime()) {
+                    entry.setTimeLocal(fileInfo.getCreateTime());
+                }
+                zos.setLevel(CompressService.textual(fileInfo.getType()) ? Deflater.BEST_SPEED : Deflater.NO_COMPRESSION);
+                zos.putNextEntry(entry);
+                try (InputStream is = fileStore.get(key, 0L, fileInfo.getSize())) {
+                    int n;
+                    while ((n = is.read(buffer)) != -1) {
+                        zos.write(buffer, 0, n);
+                    }
+                }
+                zos.closeEntry();
+            }
+            zos.close();
+        } catch (IOException e) {
+            /*
+             * 响应已经开始输出：不关闭 zos（写入中央目录后客户端会认为下载完整），
+             * 抛出异常由容器中断连接，见 AppExceptionHandler
+             */
+            throw new AppException(ServerError.FILE_READ_WRITE_ERROR, "zip aborted: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 条目名称，重名时加序号：a.txt, a (1).txt, a (2).txt
+     */
+    private static String entryName(String origin, Set<String> names) {
+        String name = null == origin || origin.isEmpty() ? "file" : origin;
+        if (names.add(name)) {
+            return name;
+        }
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String ext = dot > 0 ? name.substring(dot) : "";
+        for (int i = 1; ; i++) {
+            String n = base + " (" + i + ")" + ext;
+            if (names.add(n)) {
+                return n;
+            }
+        }
+    }
+
+    /**
+     * 回收无效文件：释放 blob 引用或者删除存储中的数据，再删除 FileInfo
+     * <p>
+     * blob 引用计数与 FileInfo 在同一事务中修改，不会重复释放；
+     * 其它存储先删除数据，失败时抛出异常、保留 FileInfo，下次重试。
+     *
+     * @param fileInfo 无效的 FileInfo
+     * @return 回收的字节数，blob 仍被其它文件引用时为 0
+     */
+    public long purge(FileInfo fileInfo) {
+        hotCacheHelper.evict(cacheKey(fileInfo));
+        boolean deleted = discard(fileInfo);
+        fileInfoRepository.delete(fileInfo);
+        cacheHelper.evict(CacheConstant.FILE_INFO + fileInfo.getId());
+        return deleted ? fileInfo.getSize() : 0L;
+    }
+
+    /**
+     * 释放 blob 引用或者删除存储中的数据
+     *
+     * @return 是否删除了数据
+     */
+    private boolean discard(FileInfo fileInfo) {
+        if (BlobService.STORE.equals(fileInfo.getStore())) {
+            return blobService.release(fileInfo.getHash());
+        }
         try {
-            Files.copy(originFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return fileStore(fileInfo.getStore()).delete(key(fileInfo));
         } catch (IOException e) {
             log.error(e.getMessage(), e);
             throw new AppException(ServerError.FILE_READ_WRITE_ERROR, e.getMessage());
         }
+    }
 
-        if (!file.exists() || !file.isFile() || !(file.length() > 0) || !file.canRead()) {
-            log.error("复制文件失败！");
-            throw new AppException(ServerError.FILE_READ_WRITE_ERROR, file.toString());
+    private FileInfo store(long n, File part, FileStore target, String origin, String type, long size, String hash) {
+        /*
+         * 1. 预定义文件的各项属性
+         */
+        // 扩展名
+        String extension = FileUtil.extension(origin);
+        String ext = (null == extension || extension.isEmpty()) ? "" : ("." + extension);
+        // id，见 IdGenerator
+        String id = String.valueOf(n);
+        String code = RadixUtil.encode(n);
+        // 路径，取 ID 中的时间
+        LocalDateTime localDateTime = LocalDateTime.ofInstant(IdGenerator.time(n), ZoneId.systemDefault());
+        String path = localDateTime.format(DateTimeFormatter.ofPattern("yyyy/MM/dd"));
+        // 名称，ID 不重复，同一目录内文件名不重复
+        String name = id + ext;
+
+        if (!(size > 0)) {
+            log.error("写入文件失败！");
+            FileUtil.delete(part);
+            throw new AppException(ServerError.FILE_READ_WRITE_ERROR, origin);
+        }
+
+        /*
+         * 2. 暂存文件提交到写入之前选定的存储（本地存储为原子重命名），小文件写入打包存储
+         * 去重模式下按摘要提交到内容寻址存储，相同内容只保留一份
+         */
+        boolean dedup = appConfig.getFileDedup() && null != hash;
+        long threshold = appConfig.getFilePackThreshold().toBytes();
+        FileStore fileStore = threshold > 0 && size < threshold ? fileStore(PackFileStore.NAME) : target;
+        if (dedup) {
+            blobService.store(part, hash, size);
+        } else {
+            try {
+                fileStore.put(path + "/" + name, part);
+            } catch (IOException e) {
+                log.error(e.getMessage(), e);
+                FileUtil.delete(part);
+                throw new AppException(ServerError.FILE_READ_WRITE_ERROR, e.getMessage());
+            }
         }
 
         /*
-         * 4. 如果是图片文件，添加水印
-         * tiny 版本暂未实现
+         * 3. 如果是图片文件，添加水印
+         * 不阻塞上传请求：保存 FileInfo 之后由处理任务生成水印图，见 upload
          */
-        String type = FileUtil.contentType(file);
-        // if (option.getMark() && null != type) {if (type.startsWith("image/") || type.startsWith("video/")) {}}
 
         /*
-         * 5. 整理 FileInfo
+         * 4. 整理 FileInfo
          */
-        Long size = file.length();
         FileInfo fileInfo = new FileInfo();
         fileInfo.setId(id);
         fileInfo.setCode(code);
@@ -187,27 +724,170 @@ public class FileService {
         fileInfo.setType(type);
         fileInfo.setSize(size);
         fileInfo.setPath(path);
+        fileInfo.setHash(hash);
+        fileInfo.setStore(dedup ? BlobService.STORE : fileStore.name());
         fileInfo.setValid(Boolean.TRUE);
 
         return fileInfo;
     }
 
-    public void output(HttpServletResponse response, File file) {
-        response.setContentType(FileUtil.contentType(file));
-        String fileName = URLEncoder.encode(file.getName(), StandardCharsets.UTF_8);
-        if (response.getHeader(HttpHeaders.CONTENT_DISPOSITION) == null) {
-            response.addHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"; filename*=utf-8' '" + fileName);
+    /**
+     * 输出文件
+     * <p>
+     * 不在事务中执行，输出期间（包括限速等待）不占用数据库连接。
+     *
+     * @param request  HttpServletRequest
+     * @param response HttpServletResponse
+     * @param param    FileParam
+     * @param inline   true 预览（使用源文件名），false 下载
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void output(HttpServletRequest request, HttpServletResponse response, FileParam param, boolean inline) {
+        FileInfo fileInfo = fileInfo(param);
+        /*
+         * 文件写入后不再变化：ETag 由 id 和 version 生成，Last-Modified 取创建时间
+         */
+        FileStore fileStore = fileStore(fileInfo.getStore());
+        String key = key(fileInfo);
+        Integer size = imageService.size(fileInfo.getType(), param.getSize());
+        /*
+         * 预览图片时输出水印图；水印图生成之前输出原图，并要求客户端每次验证，生成之后 ETag 变化
+         */
+        boolean mark = inline && null == size && markService.enabled(fileInfo.getType());
+        /*
+         * 可压缩的文件按 Accept-Encoding 输出预压缩的 gzip，Range 请求输出原文件
+         */
+        boolean compressible = null == size && !mark && compressService.compressible(fileInfo.getType(), fileInfo.getSize());
+        boolean gzip = compressible && null == request.getHeader(HttpHeaders.RANGE) && CompressService.accept(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        if (compressible) {
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
         }
-
-        try (FileInputStream fis = new FileInputStream(file); BufferedInputStream bis = new BufferedInputStream(fis); OutputStream os = response.getOutputStream()) {
-            byte[] buffer = new byte[1024];
-            int bytesRead;
-            while ((bytesRead = bis.read(buffer)) != -1) {
-                os.write(buffer, 0, bytesRead);
+        String base = cacheKey(fileInfo) + (null == size ? "" : "-" + size);
+        long lastModified = null == fileInfo.getCreateTime() ? -1L : fileInfo.getCreateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        /*
+         * 预览请求在访问磁盘之前处理 If-None-Match / If-Modified-Since：派生文件（水印图、gzip）生成之后不再变化，
+         * 客户端持有的是派生文件的 ETag 时直接返回 304，不检查派生文件，也不提交生成任务。
+         * 水印图可能尚未生成（客户端持有的是原图），只按 ETag 判断
+         */
+        if (inline && outputHelper.notModified(request, response, "\"" + base + (mark ? "-mark" : "") + (gzip ? "-" + CompressService.GZIP : "") + "\"", mark ? -1L : lastModified)) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl().getHeaderValue());
+            return;
+        }
+        FileSource marked = mark ? markService.marked(fileInfo, fileStore, key) : null;
+        FileSource gzipped = gzip ? compressService.gzip(fileInfo, fileStore, key) : null;
+        String cacheKey = base + (null == marked ? "" : "-mark") + (null == gzipped ? "" : "-" + CompressService.GZIP);
+        String etag = "\"" + cacheKey + "\"";
+        if (inline) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, mark && null == marked ? CacheControl.noCache().getHeaderValue() : cacheControl().getHeaderValue());
+            if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+                return;
+            }
+        } else {
+            response.setHeader(HttpHeaders.ETAG, etag);
+            if (lastModified > 0) {
+                response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
             }
+        }
+        String type = fileInfo.getType();
+        FileRegion region = null;
+        FileSource source = null;
+        if (null != marked) {
+            source = cached(cacheKey, marked);
+            type = ImageUtil.output(type);
+        } else if (null != gzipped) {
+            source = cached(cacheKey, gzipped);
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, CompressService.GZIP);
+        } else if (null != size) {
+            source = variant(fileInfo, fileStore, key, size, cacheKey);
+            if (null != source) {
+                type = imageService.type(type);
+            }
+        }
+        if (null == source) {
+            cacheKey = cacheKey(fileInfo);
+            ByteBuffer buffer = hotCacheHelper.get(cacheKey);
+            if (null != buffer) {
+                source = new FileSource(fileStore, key, null, buffer.remaining(), buffer);
+            } else {
+                try {
+                    region = fileStore.region(key);
+                } catch (NoSuchFileException e) {
+                    throw new AppException(ServerError.FILE_NOT_EXIST, fileInfo.getId());
+                } catch (IOException e) {
+                    log.error(e.getMessage(), e);
+                    throw new AppException(ServerError.FILE_READ_WRITE_ERROR, e.getMessage());
+                }
+                long length = null != region ? region.getLength() : fileInfo.getSize();
+                source = hotCacheHelper.admit(cacheKey, new FileSource(fileStore, key, region, length));
+            }
+        }
+        if (null == type || type.isEmpty()) {
+            /*
+             * 类型在上传时识别并保存，这里只按文件名查表，不读取文件内容
+             */
+            type = MimeUtil.byName(fileInfo.getOrigin());
+            if (null == type) {
+                type = MediaType.APPLICATION_OCTET_STREAM_VALUE;
+            }
+        }
+        if (inline) {
+            String name = URLEncoder.encode(fileInfo.getOrigin(), StandardCharsets.UTF_8);
+            response.addHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + name + "\"; filename*=utf-8' '" + name);
+        } else {
+            String name = URLEncoder.encode(fileInfo.getName(), StandardCharsets.UTF_8);
+            response.addHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + name + "\"; filename*=utf-8' '" + name);
+        }
+
+        try {
+            outputHelper.output(request, response, source, type, etag, lastModified);
         } catch (Exception e) {
             log.error(e.getMessage(), e);
         }
     }
 
+    /**
+     * 已经确定存在的派生文件（水印、压缩）优先从热点缓存输出
+     */
+    private FileSource cached(String cacheKey, FileSource source) {
+        ByteBuffer buffer = hotCacheHelper.get(cacheKey);
+        if (null != buffer) {
+            return new FileSource(source.getStore(), source.getKey(), null, buffer.remaining(), buffer);
+        }
+        return hotCacheHelper.admit(cacheKey, source);
+    }
+
+    /**
+     * 图片变体，不存在时生成；原图不大于目标尺寸或者生成失败时返回 null，输出原图
+     */
+    private FileSource variant(FileInfo fileInfo, FileStore fileStore, String key, int size, String cacheKey) {
+        ByteBuffer buffer = hotCacheHelper.get(cacheKey);
+        if (null != buffer) {
+            return new FileSource(fileStore, key, null, buffer.remaining(), buffer);
+        }
+        FileSource source;
+        try {
+            source = imageService.variant(fileInfo, fileStore, key, size);
+        } catch (Exception e) {
+            log.warn("variant failed: {}, {}", fileInfo.getId(), e.getMessage());
+            return null;
+        }
+        return null == source ? null : hotCacheHelper.admit(cacheKey, source);
+    }
+
+    /**
+     * 文件 id 和 version，用于 ETag 和热点缓存
+     */
+    private static String cacheKey(FileInfo fileInfo) {
+        return fileInfo.getId() + "-" + (null == fileInfo.getVersion() ? 0L : fileInfo.getVersion());
+    }
+
+    private CacheControl cacheControl() {
+        CacheControl cacheControl = CacheControl.maxAge(appConfig.getFileCacheMaxAge());
+        cacheControl = appConfig.getFileCachePublic() ? cacheControl.cachePublic() : cacheControl.cachePrivate();
+        if (appConfig.getFileCacheImmutable()) {
+            cacheControl = cacheControl.immutable();
+        }
+        return cacheControl;
+    }
+
 }
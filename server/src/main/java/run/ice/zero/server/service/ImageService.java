@@ -0,0 +1,198 @@
+package run.ice.zero.server.service;
+
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import run.ice.zero.server.config.AppConfig;
+import run.ice.zero.server.entity.FileInfo;
+import run.ice.zero.server.processor.FileProcessor;
+import run.ice.zero.server.store.FileRegion;
+import run.ice.zero.server.store.FileSource;
+import run.ice.zero.server.store.FileStore;
+import run.ice.zero.server.store.LocalFileStore;
+import run.ice.zero.server.util.FileUtil;
+import run.ice.zero.server.util.ImageUtil;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 图片变体（缩略图）
+ * <p>
+ * 变体按配置的尺寸（最长边）生成，保存在本地存储 variant/ 目录下：
+ * - 上传图片后由处理任务（{@link TaskService}）在后台生成
+ * - 请求时不存在则同步生成，同一变体同时只生成一次
+ * - 有摘要的文件按摘要命名，相同内容的图片共用变体
+ * - 原图不大于目标尺寸时写入空文件作为标记，直接输出原图
+ *
+ * @author DaoDao
+ */
+@Slf4j
+@Order(300)
+@Service
+public class ImageService implements FileProcessor {
+
+    public static final String DIRECTORY = "variant";
+
+    @Resource
+    private AppConfig appConfig;
+
+    @Resource
+    private LocalFileStore localFileStore;
+
+    /**
+     * 正在生成的变体
+     */
+    private final Map<String, CompletableFuture<FileRegion>> running = new ConcurrentHashMap<>();
+
+    /**
+     * 请求的尺寸对应的变体尺寸：不小于请求尺寸的最小配置尺寸，超出时取最大配置尺寸
+     *
+     * @param type 文件类型
+     * @param size 请求的尺寸
+     * @return 不是可处理的图片或者没有配置尺寸时返回 null
+     */
+    public Integer size(String type, Integer size) {
+        List<Integer> sizes = appConfig.getFileImageSizes();
+        if (null == size || !ImageUtil.supported(type) || null == sizes || sizes.isEmpty()) {
+            return null;
+        }
+        Integer max = null;
+        Integer fit = null;
+        for (Integer s : sizes) {
+            if (null == max || s > max) {
+                max = s;
+            }
+            if (s >= size && (null == fit || s < fit)) {
+                fit = s;
+            }
+        }
+        return null != fit ? fit : max;
+    }
+
+    /**
+     * 变体的文件类型：png 和 gif 保留透明通道输出 png，其它输出 jpeg
+     *
+     * @param type 原图类型
+     * @return 变体类型
+     */
+    public String type(String type) {
+        return ImageUtil.output(type);
+    }
+
+    @Override
+    public String name() {
+        return "variant";
+    }
+
+    @Override
+    public boolean supports(FileInfo fileInfo) {
+        List<Integer> sizes = appConfig.getFileImageSizes();
+        return ImageUtil.supported(fileInfo.getType()) && null != sizes && !sizes.isEmpty();
+    }
+
+    /**
+     * 生成所有尺寸的变体
+     */
+    @Override
+    public void process(FileInfo fileInfo, FileStore store, String key) throws IOException {
+        for (Integer size : appConfig.getFileImageSizes()) {
+            variant(fileInfo, store, key, size);
+        }
+    }
+
+    /**
+     * 查找变体，不存在时生成
+     *
+     * @param fileInfo FileInfo
+     * @param store    原图所在存储
+     * @param key      原图 key
+     * @param size     变体尺寸，{@link #size(String, Integer)} 的返回值
+     * @return 应该输出原图时返回 null
+     * @throws IOException IOException
+     */
+    public FileSource variant(FileInfo fileInfo, FileStore store, String key, int size) throws IOException {
+        String variant = key(fileInfo, size);
+        FileRegion region = localFileStore.stat(variant) != null ? localFileStore.region(variant) : create(fileInfo, store, key, size, variant);
+        if (null == region || region.getLength() == 0) {
+            return null;
+        }
+        return new FileSource(localFileStore, variant, region, region.getLength());
+    }
+
+    /**
+     * 同一变体同时只生成一次，其它请求等待结果
+     */
+    private FileRegion create(FileInfo fileInfo, FileStore store, String key, int size, String variant) throws IOException {
+        CompletableFuture<FileRegion> future = new CompletableFuture<>();
+        CompletableFuture<FileRegion> existing = running.putIfAbsent(variant, future);
+        if (null != existing) {
+            return existing.join();
+        }
+        try {
+            FileRegion region = generate(fileInfo, store, key, size, variant);
+            future.complete(region);
+            return region;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            running.remove(variant, future);
+        }
+    }
+
+    private FileRegion generate(FileInfo fileInfo, FileStore store, String key, int size, String variant) throws IOException {
+        BufferedImage image;
+        try (InputStream is = store.get(key, 0L, fileInfo.getSize())) {
+            image = ImageUtil.read(is, size);
+        }
+        byte[] bytes;
+        if (null == image || Math.max(image.getWidth(), image.getHeight()) <= size) {
+            bytes = new byte[0];
+        } else {
+            bytes = resize(image, size, type(fileInfo.getType()));
+        }
+        localFileStore.put(variant, new ByteArrayInputStream(bytes), bytes.length);
+        log.debug("create variant: {}, {} bytes", variant, bytes.length);
+        return localFileStore.region(variant);
+    }
+
+    private static byte[] resize(BufferedImage image, int size, String type) throws IOException {
+        boolean png = ImageUtil.PNG.equals(type);
+        double ratio = (double) size / Math.max(image.getWidth(), image.getHeight());
+        int width = Math.max((int) Math.round(image.getWidth() * ratio), 1);
+        int height = Math.max((int) Math.round(image.getHeight() * ratio), 1);
+        BufferedImage target = new BufferedImage(width, height, png ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            if (!png) {
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, width, height);
+            }
+            g.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return ImageUtil.write(target, type);
+    }
+
+    /**
+     * 变体 key：variant/ab/cd/{hash 或 id}-{size}.{ext}
+     */
+    private String key(FileInfo fileInfo, int size) {
+        String name = null != fileInfo.getHash() ? fileInfo.getHash() : fileInfo.getId();
+        String ext = ImageUtil.PNG.equals(type(fileInfo.getType())) ? ".png" : ".jpg";
+        return FileUtil.key(DIRECTORY, name, "-" + size + ext);
+    }
+
+}
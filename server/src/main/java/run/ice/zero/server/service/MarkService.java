@@ -0,0 +1,238 @@
+package run.ice.zero.server.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import run.ice.zero.server.config.AppConfig;
+import run.ice.zero.server.entity.FileInfo;
+import run.ice.zero.server.processor.FileProcessor;
+import run.ice.zero.server.store.FileRegion;
+import run.ice.zero.server.store.FileSource;
+import run.ice.zero.server.store.FileStore;
+import run.ice.zero.server.store.LocalFileStore;
+import run.ice.zero.server.util.FileUtil;
+import run.ice.zero.server.util.ImageUtil;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 水印
+ * <p>
+ * 上传请求直接返回原图，水印图由处理任务（{@link TaskService}）在后台生成，保存在本地存储 mark/ 目录下。
+ * 预览时水印图不存在（例如开启水印之前上传的图片）则提交到专用的有界线程池：
+ * - 平台线程、低优先级，CPU 密集的绘制不会占用处理请求的虚拟线程载体线程
+ * - 队列有界，队列已满时拒绝（计数），下次预览时重新提交
+ * - 水印图生成之前预览输出原图
+ *
+ * @author DaoDao
+ */
+@Slf4j
+@Order(400)
+@Service
+public class MarkService implements FileProcessor {
+
+    public static final String DIRECTORY = "mark";
+
+    private static final String METRIC_QUEUE = "zero.file.mark.queue";
+    private static final String METRIC_ACTIVE = "zero.file.mark.active";
+    private static final String METRIC_WAIT = "zero.file.mark.wait";
+    private static final String METRIC_TIME = "zero.file.mark.time";
+    private static final String METRIC_REJECTED = "zero.file.mark.rejected";
+
+    @Resource
+    private AppConfig appConfig;
+
+    @Resource
+    private LocalFileStore localFileStore;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * 已提交、尚未完成的水印图，避免重复提交
+     */
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private Timer wait;
+
+    private Timer time;
+
+    private Counter rejected;
+
+    @PostConstruct
+    public void init() {
+        int threads = Math.max(appConfig.getFileMarkThreads(), 1);
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(appConfig.getFileMarkQueue(), 1)),
+                r -> {
+                    Thread thread = new Thread(r, "mark-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        Gauge.builder(METRIC_QUEUE, executor, e -> e.getQueue().size()).register(meterRegistry);
+        Gauge.builder(METRIC_ACTIVE, executor, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+        wait = Timer.builder(METRIC_WAIT).register(meterRegistry);
+        time = Timer.builder(METRIC_TIME).register(meterRegistry);
+        rejected = Counter.builder(METRIC_REJECTED).register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    public boolean enabled(String type) {
+        return appConfig.getFileMark() && ImageUtil.supported(type);
+    }
+
+    /**
+     * 水印图，不存在时提交生成任务
+     *
+     * @param fileInfo FileInfo
+     * @param store    原图所在存储
+     * @param key      原图 key
+     * @return 尚未生成时返回 null
+     */
+    public FileSource marked(FileInfo fileInfo, FileStore store, String key) {
+        String mark = key(fileInfo);
+        if (null == localFileStore.stat(mark)) {
+            execute(fileInfo, store, key);
+            return null;
+        }
+        FileRegion region;
+        try {
+            region = localFileStore.region(mark);
+        } catch (IOException e) {
+            return null;
+        }
+        return new FileSource(localFileStore, mark, region, region.getLength());
+    }
+
+    @Override
+    public String name() {
+        return "mark";
+    }
+
+    @Override
+    public boolean supports(FileInfo fileInfo) {
+        return enabled(fileInfo.getType());
+    }
+
+    /**
+     * 上传后在处理任务中生成水印图，已存在时跳过
+     */
+    @Override
+    public void process(FileInfo fileInfo, FileStore store, String key) throws IOException {
+        String mark = key(fileInfo);
+        if (null != localFileStore.stat(mark)) {
+            return;
+        }
+        generate(fileInfo, store, key, mark);
+    }
+
+    private void execute(FileInfo fileInfo, FileStore store, String key) {
+        String mark = key(fileInfo);
+        if (!pending.add(mark)) {
+            return;
+        }
+        long submit = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                long start = System.nanoTime();
+                wait.record(start - submit, TimeUnit.NANOSECONDS);
+                try {
+                    generate(fileInfo, store, key, mark);
+                } catch (Exception e) {
+                    log.warn("create mark failed: {}, {}", key, e.getMessage());
+                } finally {
+                    pending.remove(mark);
+                    time.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(mark);
+            rejected.increment();
+            log.debug("mark queue is full: {}", key);
+        }
+    }
+
+    private void generate(FileInfo fileInfo, FileStore store, String key, String mark) throws IOException {
+        BufferedImage image;
+        try (InputStream is = store.get(key, 0L, fileInfo.getSize())) {
+            image = ImageUtil.read(is, 0);
+        }
+        if (null == image) {
+            log.debug("skip mark: {}", key);
+            return;
+        }
+        String type = ImageUtil.output(fileInfo.getType());
+        byte[] bytes = ImageUtil.write(draw(image, appConfig.getFileMarkText(), ImageUtil.PNG.equals(type)), type);
+        localFileStore.put(mark, new ByteArrayInputStream(bytes), bytes.length);
+        log.debug("create mark: {}, {} bytes", mark, bytes.length);
+    }
+
+    /**
+     * 在右下角绘制半透明文字
+     */
+    private static BufferedImage draw(BufferedImage image, String text, boolean alpha) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage target = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            if (!alpha) {
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, width, height);
+            }
+            g.drawImage(image, 0, 0, null);
+            int fontSize = Math.max(Math.min(width, height) / 20, 10);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, fontSize));
+            FontMetrics metrics = g.getFontMetrics();
+            int x = Math.max(width - metrics.stringWidth(text) - fontSize, 0);
+            int y = Math.max(height - fontSize, metrics.getAscent());
+            g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.5f));
+            g.setColor(Color.BLACK);
+            g.drawString(text, x + 1, y + 1);
+            g.setColor(Color.WHITE);
+            g.drawString(text, x, y);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    /**
+     * 水印图 key：mark/ab/cd/{hash 或 id}.{ext}
+     */
+    private static String key(FileInfo fileInfo) {
+        String name = null != fileInfo.getHash() ? fileInfo.getHash() : fileInfo.getId();
+        String ext = ImageUtil.PNG.equals(ImageUtil.output(fileInfo.getType())) ? ".png" : ".jpg";
+        return FileUtil.key(DIRECTORY, name, ext);
+    }
+
+}
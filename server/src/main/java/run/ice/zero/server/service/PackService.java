@@ -0,0 +1,117 @@
+package run.ice.zero.server.service;
+
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import run.ice.zero.server.config.AppConfig;
+import run.ice.zero.server.entity.FilePack;
+import run.ice.zero.server.repository.FilePackRepository;
+import run.ice.zero.server.store.PackFileStore;
+import run.ice.zero.server.util.FileUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 打包存储压缩
+ * <p>
+ * 有效数据占比低于 app.file.pack-compact-ratio 的段文件（不含正在写入的段文件），
+ * 把有效数据复制到当前段文件并更新索引，再删除无效索引。
+ * 压缩后的段文件保留一段时间再删除，保证已经取得旧位置的请求（例如 sendfile）可以输出完成。
+ *
+ * @author DaoDao
+ */
+@Slf4j
+@Service
+public class PackService {
+
+    /**
+     * 压缩后的段文件保留时间
+     */
+    private static final Duration RETAIN = Duration.ofMinutes(10L);
+
+    @Resource
+    private AppConfig appConfig;
+
+    @Resource
+    private FilePackRepository filePackRepository;
+
+    @Resource
+    private PackFileStore packFileStore;
+
+    /**
+     * 已压缩、等待删除的段文件：segment -> 压缩时间
+     */
+    private final Map<Integer, Long> retired = new ConcurrentHashMap<>();
+
+    @Scheduled(initialDelayString = "${app.file.pack-compact-interval:PT1H}", fixedDelayString = "${app.file.pack-compact-interval:PT1H}")
+    public void compact() {
+        List<Integer> segments = packFileStore.segments();
+        if (segments.isEmpty()) {
+            return;
+        }
+        remove();
+        Map<Integer, Long> live = new HashMap<>();
+        for (Object[] row : filePackRepository.live()) {
+            live.put(((Number) row[0]).intValue(), ((Number) row[1]).longValue());
+        }
+        int active = packFileStore.active();
+        double ratio = appConfig.getFilePackCompactRatio();
+        for (Integer segment : segments) {
+            if (segment >= active || retired.containsKey(segment)) {
+                continue;
+            }
+            long total = packFileStore.segment(segment).length();
+            long used = live.getOrDefault(segment, 0L);
+            if (used >= total * ratio) {
+                continue;
+            }
+            log.info("compact pack segment: {}, live: {} / {}", segment, used, total);
+            try {
+                compact(segment);
+            } catch (IOException e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 压缩一个段文件
+     *
+     * @param segment 段文件序号
+     * @throws IOException IOException
+     */
+    public void compact(int segment) throws IOException {
+        List<FilePack> list = filePackRepository.findBySegmentAndValid(segment, Boolean.TRUE);
+        for (FilePack filePack : list) {
+            packFileStore.relocate(filePack);
+        }
+        int n = filePackRepository.purge(segment);
+        log.info("compact pack segment: {}, relocate: {}, purge: {}", segment, list.size(), n);
+        if (filePackRepository.findBySegmentAndValid(segment, Boolean.TRUE).isEmpty()) {
+            retired.put(segment, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 删除超过保留时间的已压缩段文件
+     */
+    private void remove() {
+        long expire = System.currentTimeMillis() - RETAIN.toMillis();
+        retired.forEach((segment, time) -> {
+            if (time < expire) {
+                File file = packFileStore.segment(segment);
+                log.info("remove pack segment: {}", file.getName());
+                FileUtil.delete(file);
+                retired.remove(segment);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,327 @@
+package run.ice.zero.server.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import run.ice.zero.server.config.AppConfig;
+import run.ice.zero.server.entity.FileInfo;
+import run.ice.zero.server.repository.FileBlobRepository;
+import run.ice.zero.server.repository.FileInfoRepository;
+import run.ice.zero.server.store.DiskRouter;
+import run.ice.zero.server.store.LocalFileStore;
+import run.ice.zero.server.util.FileUtil;
+import run.ice.zero.server.util.TokenBucket;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * 存储回收
+ * <p>
+ * 定时执行，每次依次：
+ * - 删除暂存目录（包括每个磁盘的暂存目录）中超过上传会话有效期的文件（中断的上传、旧版本遗留的暂存副本）
+ * - 按 id 分页回收无效的 FileInfo：释放 blob 引用或者删除存储中的数据，再删除记录
+ * - 并行遍历本地存储（包括多磁盘）的日期目录、blob 目录和派生文件（变体、水印、压缩）目录，
+ *   按批与数据库核对，删除没有记录的文件（孤儿）
+ * 只处理修改时间早于上传会话有效期的文件，不会删除正在提交的上传。
+ * 遍历的文件数按 app.file.sweep-rate 限速，线程为低优先级，减少对前台读写的影响。
+ *
+ * @author DaoDao
+ */
+@Slf4j
+@Service
+public class SweepService {
+
+    private static final String METRIC_RECLAIMED = "zero.file.sweep.reclaimed";
+    private static final String METRIC_DELETED = "zero.file.sweep.deleted";
+
+    private static final Pattern YEAR = Pattern.compile("^\\d{4}$");
+
+    private static final Pattern HASH = Pattern.compile("^[0-9a-f]{64}$");
+
+    @Resource
+    private AppConfig appConfig;
+
+    @Resource
+    private FileService fileService;
+
+    @Resource
+    private FileInfoRepository fileInfoRepository;
+
+    @Resource
+    private FileBlobRepository fileBlobRepository;
+
+    @Resource
+    private LocalFileStore localFileStore;
+
+    @Resource
+    private DiskRouter diskRouter;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Scheduled(initialDelayString = "${app.file.sweep-interval:PT6H}", fixedDelayString = "${app.file.sweep-interval:PT6H}")
+    public void sweep() {
+        if (!appConfig.getFileSweep()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        long expire = start - appConfig.getFileUploadExpire().toMillis();
+        TokenBucket bucket = new TokenBucket(appConfig.getFileSweepRate(), appConfig.getFileSweepRate());
+        tmp(expire, bucket);
+        invalid();
+        orphan(expire, bucket);
+        log.info("sweep finished in {} ms", System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 删除暂存目录（app.file.path 和每个磁盘）中过期的文件和空目录
+     */
+    private void tmp(long expire, TokenBucket bucket) {
+        for (File dir : fileService.tmps()) {
+            try {
+                Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        bucket.acquire(1L);
+                        if (attrs.isRegularFile() && attrs.lastModifiedTime().toMillis() < expire) {
+                            delete(file.toFile(), attrs.size(), "tmp");
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(Path d, IOException e) {
+                        if (!d.equals(dir.toPath())) {
+                            d.toFile().delete();
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 按 id 分页回收无效的 FileInfo，失败的记录跳过，下次重试
+     */
+    private void invalid() {
+        int batch = Math.max(appConfig.getFileSweepBatch(), 1);
+        String after = "";
+        int count = 0;
+        long reclaimed = 0L;
+        while (true) {
+            List<FileInfo> list = fileInfoRepository.invalid(after, PageRequest.ofSize(batch));
+            for (FileInfo fileInfo : list) {
+                try {
+                    reclaimed += fileService.purge(fileInfo);
+                    count++;
+                } catch (Exception e) {
+                    log.warn("purge failed: {}, {}", fileInfo.getId(), e.getMessage());
+                }
+            }
+            if (list.size() < batch) {
+                break;
+            }
+            after = list.getLast().getId();
+        }
+        if (count > 0) {
+            meterRegistry.counter(METRIC_DELETED, "kind", "invalid").increment(count);
+            meterRegistry.counter(METRIC_RECLAIMED, "kind", "invalid").increment(reclaimed);
+            log.info("purge invalid files: {}, {} bytes", count, reclaimed);
+        }
+    }
+
+    /**
+     * 并行遍历本地存储，每个顶级目录一个任务
+     */
+    private void orphan(long expire, TokenBucket bucket) {
+        List<File> dirs = new ArrayList<>();
+        List<File> roots = new ArrayList<>();
+        roots.add(localFileStore.file(""));
+        diskRouter.stores().forEach(store -> roots.add(store.file("")));
+        for (File root : roots) {
+            File[] files = root.listFiles(File::isDirectory);
+            if (null != files) {
+                dirs.addAll(List.of(files));
+            }
+        }
+        AtomicInteger counter = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(Math.max(appConfig.getFileSweepThreads(), 1), r -> {
+            Thread thread = new Thread(r, "sweep-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        })) {
+            for (File dir : dirs) {
+                String name = dir.getName();
+                if (YEAR.matcher(name).matches()) {
+                    futures.add(executor.submit(() -> dated(dir, expire, bucket)));
+                } else if (BlobService.DIRECTORY.equals(name)) {
+                    futures.add(executor.submit(() -> sharded(dir, expire, bucket, fileBlobRepository::hashes)));
+                } else if (ImageService.DIRECTORY.equals(name) || MarkService.DIRECTORY.equals(name) || CompressService.DIRECTORY.equals(name)) {
+                    futures.add(executor.submit(() -> sharded(dir, expire, bucket, this::derived)));
+                }
+            }
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 日期目录 yyyy/MM/dd/name，按 (path, name) 核对 file_info
+     */
+    private void dated(File year, long expire, TokenBucket bucket) {
+        File[] months = year.listFiles(File::isDirectory);
+        if (null == months) {
+            return;
+        }
+        for (File month : months) {
+            File[] days = month.listFiles(File::isDirectory);
+            if (null == days) {
+                continue;
+            }
+            for (File day : days) {
+                String path = year.getName() + "/" + month.getName() + "/" + day.getName();
+                scan(day, expire, bucket, names -> new HashSet<>(fileInfoRepository.names(path, names)), Function.identity());
+            }
+        }
+    }
+
+    /**
+     * 两级分片目录 dir/ab/cd/name
+     *
+     * @param exists 批量查询存在的标识
+     */
+    private void sharded(File dir, long expire, TokenBucket bucket, Function<Set<String>, List<String>> exists) {
+        File[] firsts = dir.listFiles(File::isDirectory);
+        if (null == firsts) {
+            return;
+        }
+        for (File first : firsts) {
+            File[] seconds = first.listFiles(File::isDirectory);
+            if (null == seconds) {
+                continue;
+            }
+            for (File second : seconds) {
+                scan(second, expire, bucket, ids -> new HashSet<>(exists.apply(ids)), SweepService::base);
+            }
+        }
+    }
+
+    /**
+     * 派生文件按 hash 或 id 命名，对应的有效文件不存在时为孤儿
+     */
+    private List<String> derived(Set<String> names) {
+        Set<String> hashes = new HashSet<>();
+        Set<String> ids = new HashSet<>();
+        for (String name : names) {
+            (HASH.matcher(name).matches() ? hashes : ids).add(name);
+        }
+        List<String> list = new ArrayList<>();
+        if (!hashes.isEmpty()) {
+            list.addAll(fileInfoRepository.hashes(hashes));
+        }
+        if (!ids.isEmpty()) {
+            list.addAll(fileInfoRepository.ids(ids));
+        }
+        return list;
+    }
+
+    /**
+     * 文件名去掉尺寸和扩展名：abcd-128.png -> abcd
+     */
+    private static String base(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '-' || c == '.') {
+                return name.substring(0, i);
+            }
+        }
+        return name;
+    }
+
+    /**
+     * 按批核对一个目录中的文件，删除没有记录的过期文件
+     *
+     * @param dir        目录
+     * @param exists     批量查询存在的标识
+     * @param identifier 文件名 -> 标识
+     */
+    private void scan(File dir, long expire, TokenBucket bucket, Function<Set<String>, Set<String>> exists, Function<String, String> identifier) {
+        int batch = Math.max(appConfig.getFileSweepBatch(), 1);
+        Map<String, List<File>> files = new HashMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath())) {
+            for (Path path : stream) {
+                bucket.acquire(1L);
+                File file = path.toFile();
+                if (!file.isFile() || file.lastModified() >= expire) {
+                    continue;
+                }
+                if (file.getName().endsWith(FileUtil.PART_SUFFIX)) {
+                    delete(file, file.length(), "tmp");
+                    continue;
+                }
+                files.computeIfAbsent(identifier.apply(file.getName()), k -> new ArrayList<>()).add(file);
+                if (files.size() >= batch) {
+                    reconcile(files, exists);
+                    files.clear();
+                }
+            }
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        }
+        if (!files.isEmpty()) {
+            reconcile(files, exists);
+        }
+    }
+
+    private void reconcile(Map<String, List<File>> files, Function<Set<String>, Set<String>> exists) {
+        Set<String> found = exists.apply(files.keySet());
+        files.forEach((id, list) -> {
+            if (!found.contains(id)) {
+                for (File file : list) {
+                    delete(file, file.length(), "orphan");
+                }
+            }
+        });
+    }
+
+    private void delete(File file, long size, String kind) {
+        if (file.delete()) {
+            meterRegistry.counter(METRIC_DELETED, "kind", kind).increment();
+            meterRegistry.counter(METRIC_RECLAIMED, "kind", kind).increment(size);
+            log.info("sweep {}: {}, {} bytes", kind, file.getPath(), size);
+        }
+    }
+
+}
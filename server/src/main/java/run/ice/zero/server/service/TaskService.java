@@ -0,0 +1,200 @@
+package run.ice.zero.server.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import run.ice.zero.server.config.AppConfig;
+import run.ice.zero.server.entity.FileInfo;
+import run.ice.zero.server.entity.FileTask;
+import run.ice.zero.server.processor.FileProcessor;
+import run.ice.zero.server.repository.FileInfoRepository;
+import run.ice.zero.server.repository.FileTaskRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 上传后处理任务
+ * <p>
+ * 上传时与 FileInfo 在同一事务中写入 file_task（outbox），上传请求只等待数据写入。
+ * 定时领取到期的任务，在有界线程池中按顺序执行所有 {@link FileProcessor}：
+ * - 领取使用条件更新，多个实例不会重复执行同一任务
+ * - 失败时记录已完成的处理器，按退避时间重试，超过最大次数后标记为失败
+ * - 实例退出时处理中的任务超时后重新放回队列
+ * - 每个处理器的耗时和失败次数按 processor 标签记录
+ *
+ * @author DaoDao
+ */
+@Slf4j
+@Service
+public class TaskService {
+
+    private static final String METRIC_WAIT = "zero.file.task.wait";
+    private static final String METRIC_TIME = "zero.file.task.time";
+    private static final String METRIC_FAILED = "zero.file.task.failed";
+    private static final String METRIC_ACTIVE = "zero.file.task.active";
+
+    /**
+     * 处理中的任务超过该时间未完成时重新放回队列
+     */
+    private static final Duration TIMEOUT = Duration.ofMinutes(30L);
+
+    private static final int ERROR_LENGTH = 512;
+
+    @Resource
+    private AppConfig appConfig;
+
+    @Resource
+    private FileService fileService;
+
+    @Resource
+    private FileInfoRepository fileInfoRepository;
+
+    @Resource
+    private FileTaskRepository fileTaskRepository;
+
+    @Resource
+    private List<FileProcessor> fileProcessors;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private ThreadPoolExecutor executor;
+
+    private Timer wait;
+
+    @PostConstruct
+    public void init() {
+        int threads = Math.max(appConfig.getFileTaskThreads(), 1);
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads),
+                r -> {
+                    Thread thread = new Thread(r, "task-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        Gauge.builder(METRIC_ACTIVE, executor, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+        wait = Timer.builder(METRIC_WAIT).register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 领取到期的任务，数量不超过线程池的空闲容量
+     */
+    @Scheduled(initialDelayString = "${app.file.task-interval:PT1S}", fixedDelayString = "${app.file.task-interval:PT1S}")
+    public void poll() {
+        int free = executor.getMaximumPoolSize() + executor.getQueue().remainingCapacity() - executor.getActiveCount() - executor.getQueue().size();
+        if (free <= 0) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<FileTask> list = fileTaskRepository.findByStatusAndNextTimeLessThanEqualOrderByNextTime(FileTask.PENDING, now, PageRequest.ofSize(free));
+        for (FileTask task : list) {
+            if (fileTaskRepository.claim(task.getId(), now) == 0) {
+                continue;
+            }
+            task.setStatus(FileTask.RUNNING);
+            task.setUpdateTime(now);
+            try {
+                executor.execute(() -> run(task));
+            } catch (RejectedExecutionException e) {
+                task.setStatus(FileTask.PENDING);
+                fileTaskRepository.save(task);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 超时的处理中任务重新放回队列
+     */
+    @Scheduled(initialDelayString = "PT1M", fixedDelayString = "PT1M")
+    public void recover() {
+        LocalDateTime now = LocalDateTime.now();
+        int n = fileTaskRepository.recover(now.minus(TIMEOUT), now);
+        if (n > 0) {
+            log.warn("recover file task: {}", n);
+        }
+    }
+
+    private void run(FileTask task) {
+        if (null != task.getCreateTime() && task.getAttempts() == 0) {
+            wait.record(Duration.between(task.getCreateTime(), LocalDateTime.now()));
+        }
+        FileInfo fileInfo = fileInfoRepository.findById(task.getId()).orElse(null);
+        if (null == fileInfo || !Boolean.TRUE.equals(fileInfo.getValid())) {
+            fileTaskRepository.delete(task);
+            return;
+        }
+        Set<String> done = new LinkedHashSet<>();
+        if (null != task.getDone() && !task.getDone().isEmpty()) {
+            done.addAll(Arrays.asList(task.getDone().split(",")));
+        }
+        for (FileProcessor fileProcessor : fileProcessors) {
+            String name = fileProcessor.name();
+            if (done.contains(name) || !fileProcessor.supports(fileInfo)) {
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                fileProcessor.process(fileInfo, fileService.fileStore(fileInfo.getStore()), fileService.key(fileInfo));
+            } catch (Exception e) {
+                meterRegistry.counter(METRIC_FAILED, "processor", name).increment();
+                fail(task, done, name, e);
+                return;
+            } finally {
+                meterRegistry.timer(METRIC_TIME, "processor", name).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            done.add(name);
+            if (!Boolean.TRUE.equals(fileInfo.getValid())) {
+                break;
+            }
+        }
+        fileTaskRepository.delete(task);
+    }
+
+    /**
+     * 记录失败，未超过最大次数时按 backoff * 2^(attempts - 1) 之后重试
+     */
+    private void fail(FileTask task, Set<String> done, String name, Exception e) {
+        int attempts = task.getAttempts() + 1;
+        String error = name + ": " + e.getMessage();
+        task.setAttempts(attempts);
+        task.setDone(done.isEmpty() ? null : String.join(",", done));
+        task.setError(error.length() > ERROR_LENGTH ? error.substring(0, ERROR_LENGTH) : error);
+        if (attempts >= appConfig.getFileTaskRetry()) {
+            task.setStatus(FileTask.FAILED);
+            log.error("file task failed: {}, {}", task.getId(), error, e);
+        } else {
+            task.setStatus(FileTask.PENDING);
+            task.setNextTime(LocalDateTime.now().plus(appConfig.getFileTaskBackoff().multipliedBy(1L << Math.min(attempts - 1, 16))));
+            log.warn("file task retry: {}, {}, {}", task.getId(), attempts, error);
+        }
+        fileTaskRepository.save(task);
+    }
+
+}
@@ -0,0 +1,359 @@
+package run.ice.zero.server.service;
+
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import run.ice.zero.server.config.AppConfig;
+import run.ice.zero.server.constant.CacheConstant;
+import run.ice.zero.server.error.AppException;
+import run.ice.zero.server.error.ServerError;
+import run.ice.zero.server.model.file.*;
+import run.ice.zero.server.store.FileStore;
+import run.ice.zero.server.util.FileUtil;
+import run.ice.zero.server.util.IdGenerator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * 分片上传
+ * <p>
+ * 会话保存在 redis hash 中：meta 为会话信息，owner 为上传用户，id 为创建会话时分配的文件 id，
+ * store 为按文件 id 选定的存储，
+ * writing 为正在写入的分片数，completing 表示正在完成，数字字段为 分片序号 -> SHA-256。
+ * 文件数据直接按偏移量写入预分配的暂存文件（位于选定存储的暂存目录），各分片可以并行上传、重复上传；
+ * 完成时暂存文件原子重命名为正式文件，不需要再次读取和拼接。
+ * <p>
+ * 分片先递增 writing 再检查 completing，完成先设置 completing 再检查 writing，两者不会同时进行；
+ * 写入分片的进程异常退出时 writing 不会恢复，只能取消会话重新上传（或者等待会话过期）。
+ *
+ * @author DaoDao
+ */
+@Slf4j
+@Service
+public class UploadService {
+
+    private static final String META = "meta";
+
+    private static final String OWNER = "owner";
+
+    private static final String STORE = "store";
+
+    private static final String ID = "id";
+
+    private static final String WRITING = "writing";
+
+    private static final String COMPLETING = "completing";
+
+    private static final Pattern NUMBER = Pattern.compile("^[0-9]+$");
+
+    /**
+     * 最大分片数量，超出时自动增大分片大小
+     */
+    private static final int MAX_PARTS = 10000;
+
+    private static final Pattern UPLOAD_PART = Pattern.compile("^[0-9a-f]{32}" + Pattern.quote(FileUtil.PART_SUFFIX) + "$");
+
+    @Resource
+    private AppConfig appConfig;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private FileService fileService;
+
+    @Resource
+    private IdGenerator idGenerator;
+
+    public UploadData init(UploadInit param) {
+        long size = param.getSize();
+        long partSize = null != param.getPartSize() ? param.getPartSize() : appConfig.getFilePartSize().toBytes();
+        if ((size + partSize - 1) / partSize > MAX_PARTS) {
+            partSize = (size + MAX_PARTS - 1) / MAX_PARTS;
+        }
+        int partCount = (int) ((size + partSize - 1) / partSize);
+        String uploadId = UUID.randomUUID().toString().replace("-", "");
+
+        UploadData data = new UploadData();
+        data.setUploadId(uploadId);
+        data.setOrigin(param.getOrigin().replace("/", "_"));
+        data.setSize(size);
+        data.setPartSize(partSize);
+        data.setPartCount(partCount);
+
+        long id = idGenerator.next();
+        FileStore target = fileService.target(String.valueOf(id));
+        String key = CacheConstant.FILE_UPLOAD + uploadId;
+        Map<String, String> map = new HashMap<>();
+        map.put(META, data.toJson());
+        map.put(OWNER, username());
+        map.put(ID, String.valueOf(id));
+        map.put(STORE, target.name());
+        stringRedisTemplate.opsForHash().putAll(key, map);
+        stringRedisTemplate.expire(key, appConfig.getFileUploadExpire());
+
+        File part = fileService.part(target, uploadId);
+        try (RandomAccessFile raf = new RandomAccessFile(part, "rw")) {
+            raf.setLength(size);
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+            stringRedisTemplate.delete(key);
+            FileUtil.delete(part);
+            throw new AppException(ServerError.FILE_READ_WRITE_ERROR, e.getMessage());
+        }
+
+        data.setParts(new ArrayList<>());
+        return data;
+    }
+
+    /**
+     * 上传一个分片，按偏移量直接写入暂存文件
+     * <p>
+     * 写入之前删除分片记录，重复上传失败时（摘要错误、长度错误、连接中断）暂存文件中的数据已经改变，
+     * 分片需要重新上传，不能沿用之前的记录。正在完成的会话不能再上传分片。
+     *
+     * @param uploadId 上传会话 ID
+     * @param number   分片序号，从 1 开始
+     * @param sha256   客户端计算的分片摘要，可以为空
+     * @param is       分片数据流
+     * @return UploadPart
+     */
+    public UploadPart part(String uploadId, Integer number, String sha256, InputStream is) {
+        Session session = session(uploadId);
+        UploadData data = session.data();
+        if (null == number || number < 1 || number > data.getPartCount()) {
+            throw new AppException(ServerError.UPLOAD_PART_ERROR, String.valueOf(number));
+        }
+        long position = (number - 1) * data.getPartSize();
+        long length = Math.min(data.getPartSize(), data.getSize() - position);
+
+        String key = CacheConstant.FILE_UPLOAD + uploadId;
+        HashOperations<String, String, String> ops = stringRedisTemplate.opsForHash();
+        ops.increment(key, WRITING, 1L);
+        String hash;
+        try {
+            List<String> values = ops.multiGet(key, List.of(META, COMPLETING));
+            if (null == values.get(0)) {
+                throw new AppException(ServerError.UPLOAD_NOT_EXIST, uploadId);
+            }
+            if (null != values.get(1)) {
+                throw new AppException(ServerError.UPLOAD_BUSY, uploadId);
+            }
+            ops.delete(key, String.valueOf(number));
+            hash = write(session, number, sha256, is, position, length);
+            ops.put(key, String.valueOf(number), hash);
+        } finally {
+            ops.increment(key, WRITING, -1L);
+            stringRedisTemplate.expire(key, appConfig.getFileUploadExpire());
+        }
+
+        UploadPart uploadPart = new UploadPart();
+        uploadPart.setNumber(number);
+        uploadPart.setSize(length);
+        uploadPart.setSha256(hash);
+        return uploadPart;
+    }
+
+    /**
+     * 写入分片数据，校验长度和摘要
+     *
+     * @return 分片的 SHA-256
+     */
+    private String write(Session session, int number, String sha256, InputStream is, long position, long length) {
+        MessageDigest digest = FileUtil.sha256();
+        long count = 0L;
+        File part = fileService.part(session.store(), session.data().getUploadId());
+        try (FileChannel channel = FileChannel.open(part.toPath(), StandardOpenOption.WRITE)) {
+            byte[] buffer = new byte[(int) Math.min(length, appConfig.getFileBufferSize().toBytes())];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                if (count + n > length) {
+                    throw new AppException(ServerError.UPLOAD_PART_ERROR, number + " : size > " + length);
+                }
+                digest.update(buffer, 0, n);
+                ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, n);
+                while (byteBuffer.hasRemaining()) {
+                    count += channel.write(byteBuffer, position + count);
+                }
+            }
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+            throw new AppException(ServerError.FILE_READ_WRITE_ERROR, e.getMessage());
+        }
+        if (count != length) {
+            throw new AppException(ServerError.UPLOAD_PART_ERROR, number + " : size " + count + " != " + length);
+        }
+        String hash = HexFormat.of().formatHex(digest.digest());
+        if (null != sha256 && !sha256.isEmpty() && !sha256.equalsIgnoreCase(hash)) {
+            throw new AppException(ServerError.UPLOAD_PART_ERROR, number + " : sha256 " + hash);
+        }
+        return hash;
+    }
+
+    /**
+     * 查询会话和已上传的分片，用于断点续传
+     *
+     * @param param UploadParam
+     * @return UploadData
+     */
+    public UploadData status(UploadParam param) {
+        UploadData data = session(param.getUploadId()).data();
+        data.setParts(parts(data));
+        return data;
+    }
+
+    /**
+     * 完成上传，同一会话同时只能有一个完成请求，并且没有正在写入的分片
+     *
+     * @param param UploadParam
+     * @return FileData
+     */
+    public FileData complete(UploadParam param) {
+        String uploadId = param.getUploadId();
+        Session session = session(uploadId);
+        String key = CacheConstant.FILE_UPLOAD + uploadId;
+        HashOperations<String, String, String> ops = stringRedisTemplate.opsForHash();
+        if (!Boolean.TRUE.equals(ops.putIfAbsent(key, COMPLETING, "1"))) {
+            throw new AppException(ServerError.UPLOAD_BUSY, uploadId);
+        }
+        try {
+            String writing = ops.get(key, WRITING);
+            if (null != writing && Long.parseLong(writing) > 0L) {
+                throw new AppException(ServerError.UPLOAD_BUSY, uploadId + " : writing " + writing);
+            }
+            FileData fileData = complete(session);
+            stringRedisTemplate.delete(key);
+            return fileData;
+        } catch (RuntimeException e) {
+            ops.delete(key, COMPLETING);
+            throw e;
+        }
+    }
+
+    private FileData complete(Session session) {
+        UploadData data = session.data();
+        String uploadId = data.getUploadId();
+        List<UploadPart> parts = parts(data);
+        if (parts.size() != data.getPartCount()) {
+            throw new AppException(ServerError.UPLOAD_INCOMPLETE, parts.size() + " / " + data.getPartCount());
+        }
+        File part = fileService.part(session.store(), uploadId);
+        byte[] head;
+        try (InputStream is = new FileInputStream(part)) {
+            head = is.readNBytes(FileUtil.HEAD_SIZE);
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+            throw new AppException(ServerError.FILE_READ_WRITE_ERROR, e.getMessage());
+        }
+        String type = FileUtil.contentType(head, data.getOrigin());
+        try (FileChannel channel = FileChannel.open(part.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(false);
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+            throw new AppException(ServerError.FILE_READ_WRITE_ERROR, e.getMessage());
+        }
+        /*
+         * 整个文件的 SHA-256 需要重新读取文件才能得到，分片上传不计算，也不参与去重
+         */
+        long id = null != session.id() ? session.id() : idGenerator.next();
+        return fileService.upload(id, part, session.store(), data.getOrigin(), type, data.getSize(), null);
+    }
+
+    public void abort(UploadParam param) {
+        String uploadId = param.getUploadId();
+        Session session = session(uploadId);
+        stringRedisTemplate.delete(CacheConstant.FILE_UPLOAD + uploadId);
+        FileUtil.delete(fileService.part(session.store(), uploadId));
+    }
+
+    /**
+     * 清理会话已过期的暂存文件（所有暂存目录）
+     */
+    @Scheduled(initialDelayString = "${app.file.upload-clean-interval:PT10M}", fixedDelayString = "${app.file.upload-clean-interval:PT10M}")
+    public void clean() {
+        long expire = System.currentTimeMillis() - Duration.ofMinutes(1L).toMillis();
+        for (File dir : fileService.tmps()) {
+            File[] files = dir.listFiles((d, name) -> UPLOAD_PART.matcher(name).matches());
+            if (null == files) {
+                continue;
+            }
+            for (File file : files) {
+                String uploadId = file.getName().substring(0, 32);
+                Boolean exists = stringRedisTemplate.hasKey(CacheConstant.FILE_UPLOAD + uploadId);
+                if (!Boolean.TRUE.equals(exists) && file.lastModified() < expire) {
+                    log.info("clean upload part: {}", file.getName());
+                    FileUtil.delete(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * 会话信息、暂存文件所在的存储和文件 id
+     */
+    private record Session(UploadData data, FileStore store, Long id) {
+    }
+
+    /**
+     * 查询会话，不存在或者不是当前用户的会话时抛出异常；
+     * 没有 store 字段的旧会话暂存文件在本地存储中，没有 id 字段的旧会话在完成时分配 id
+     */
+    private Session session(String uploadId) {
+        String key = CacheConstant.FILE_UPLOAD + uploadId;
+        HashOperations<String, String, String> ops = stringRedisTemplate.opsForHash();
+        List<String> values = ops.multiGet(key, List.of(META, OWNER, STORE, ID));
+        String json = values.get(0);
+        if (null == json || json.isEmpty()) {
+            throw new AppException(ServerError.UPLOAD_NOT_EXIST, uploadId);
+        }
+        if (!username().equals(values.get(1))) {
+            throw new AppException(ServerError.UPLOAD_NOT_EXIST, uploadId);
+        }
+        String id = values.get(3);
+        return new Session(new UploadData().ofJson(json), fileService.fileStore(values.get(2)), null == id ? null : Long.valueOf(id));
+    }
+
+    private List<UploadPart> parts(UploadData data) {
+        String key = CacheConstant.FILE_UPLOAD + data.getUploadId();
+        HashOperations<String, String, String> ops = stringRedisTemplate.opsForHash();
+        Map<String, String> entries = ops.entries(key);
+        List<UploadPart> parts = new ArrayList<>();
+        entries.forEach((field, hash) -> {
+            if (!NUMBER.matcher(field).matches()) {
+                return;
+            }
+            int number = Integer.parseInt(field);
+            long position = (number - 1) * data.getPartSize();
+            UploadPart part = new UploadPart();
+            part.setNumber(number);
+            part.setSize(Math.min(data.getPartSize(), data.getSize() - position));
+            part.setSha256(hash);
+            parts.add(part);
+        });
+        parts.sort(Comparator.comparing(UploadPart::getNumber));
+        return parts;
+    }
+
+    private static String username() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        assert authentication != null;
+        return authentication.getName();
+    }
+
+}
@@ -21,6 +21,7 @@ import run.ice.zero.server.entity.FileInfo;
 import run.ice.zero.server.entity.User;
 import run.ice.zero.server.error.AppException;
 import run.ice.zero.server.error.ServerError;
+import run.ice.zero.server.helper.CacheHelper;
 import run.ice.zero.server.model.IdParam;
 import run.ice.zero.server.model.PageData;
 import run.ice.zero.server.model.PageParam;
@@ -43,6 +44,11 @@ import java.util.*;
 @Transactional
 public class UserService implements UserDetailsService {
 
+    /**
+     * User 缓存时间
+     */
+    private static final Duration USER_EXPIRE = Duration.ofHours(1L);
+
     @Resource
     private UserRepository userRepository;
 
@@ -55,6 +61,9 @@ public class UserService implements UserDetailsService {
     @Resource
     private FileInfoRepository fileInfoRepository;
 
+    @Resource
+    private CacheHelper cacheHelper;
+
     /**
      * 根据用户名加载用户信息
      *
@@ -141,6 +150,7 @@ public class UserService implements UserDetailsService {
             user.setAvatar(avatar);
         }
         user = userRepository.save(user);
+        cacheHelper.evict(CacheConstant.USER + user.getId());
         UserData data = new UserData();
         BeanUtils.copyProperties(user, data);
         return data;
@@ -155,17 +165,10 @@ public class UserService implements UserDetailsService {
     }
 
     public User user(Long id) {
-        String key = CacheConstant.USER + id;
-        String json = stringRedisTemplate.opsForValue().get(key);
-        if (null != json) {
-            return new User().ofJson(json);
-        }
-        Optional<User> optional = userRepository.findById(id);
-        if (optional.isEmpty()) {
+        User user = cacheHelper.get(CacheConstant.USER, String.valueOf(id), USER_EXPIRE, json -> new User().ofJson(json), () -> userRepository.findById(id).orElse(null));
+        if (null == user) {
             throw new AppException(ServerError.USER_NOT_EXIST, String.valueOf(id));
         }
-        User user = optional.get();
-        stringRedisTemplate.opsForValue().set(key, user.toJson(), Duration.ofHours(1L));
         return user;
     }
 
@@ -201,8 +204,11 @@ public class UserService implements UserDetailsService {
         BeanUtils.copyProperties(param, entity, BeanUtil.nullProperties(param));
         entity = userRepository.saveAndFlush(entity);
 
-        String key = CacheConstant.USER + id;
-        stringRedisTemplate.delete(key);
+        if (null == id) {
+            cacheHelper.created(CacheConstant.USER, List.of(String.valueOf(entity.getId())));
+        } else {
+            cacheHelper.evict(CacheConstant.USER + entity.getId());
+        }
 
         UserData data = new UserData();
         BeanUtils.copyProperties(entity, data);
@@ -0,0 +1,180 @@
+package run.ice.zero.server.store;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import run.ice.zero.server.config.DiskConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 多磁盘路由
+ * <p>
+ * 每个磁盘是一个 {@link LocalFileStore}，名称为 disk-{name}，新文件按 id 在哈希环上选择磁盘：
+ * - 每个磁盘按权重分配虚拟节点，增加磁盘只有约 1/n 的新文件落到新磁盘，不需要迁移已有文件
+ * - 顺时针跳过不可写（只读、故障）的磁盘
+ * - 定时检查：目录可写、可用空间不低于 minFree，空间不足时只读，探测失败时故障
+ *
+ * @author DaoDao
+ */
+@Slf4j
+public class DiskRouter {
+
+    /**
+     * app.file.store 取值
+     */
+    public static final String NAME = "disk";
+
+    public static final String PREFIX = NAME + "-";
+
+    /**
+     * 每单位权重的虚拟节点数
+     */
+    private static final int REPLICAS = 160;
+
+    private static final String PROBE = ".probe";
+
+    public enum State {
+        UP, READ_ONLY, DOWN
+    }
+
+    private static class Disk {
+
+        private final LocalFileStore store;
+
+        private final File root;
+
+        private volatile State state = State.UP;
+
+        private volatile long usable;
+
+        Disk(LocalFileStore store, File root) {
+            this.store = store;
+            this.root = root;
+        }
+
+    }
+
+    private final Map<String, Disk> disks = new LinkedHashMap<>();
+
+    private final TreeMap<Long, Disk> ring = new TreeMap<>();
+
+    public DiskRouter(DiskConfig diskConfig, MeterRegistry meterRegistry) {
+        for (DiskConfig.Root root : diskConfig.getRoots()) {
+            String storeName = PREFIX + root.getName();
+            if (storeName.length() > 16 || disks.containsKey(storeName)) {
+                throw new IllegalArgumentException("disk name is too long or duplicated: " + root.getName());
+            }
+            Disk disk = new Disk(new LocalFileStore(storeName, root.getPath(), meterRegistry), new File(root.getPath()));
+            disks.put(storeName, disk);
+            int replicas = Math.max(null == root.getWeight() ? 1 : root.getWeight(), 0) * REPLICAS;
+            for (int i = 0; i < replicas; i++) {
+                ring.put(hash(storeName + "#" + i), disk);
+            }
+            Gauge.builder("zero.file.disk.usable", disk, d -> d.usable).tag("disk", storeName).register(meterRegistry);
+            Gauge.builder("zero.file.disk.state", disk, d -> d.state.ordinal()).tag("disk", storeName).register(meterRegistry);
+        }
+    }
+
+    public boolean isEmpty() {
+        return disks.isEmpty();
+    }
+
+    /**
+     * 按名称查找磁盘
+     *
+     * @param name FileInfo.store
+     * @return 不是磁盘时返回 null
+     */
+    public LocalFileStore get(String name) {
+        Disk disk = disks.get(name);
+        return null == disk ? null : disk.store;
+    }
+
+    public Collection<LocalFileStore> stores() {
+        List<LocalFileStore> list = new ArrayList<>();
+        disks.values().forEach(d -> list.add(d.store));
+        return list;
+    }
+
+    /**
+     * 为新文件选择磁盘
+     *
+     * @param id 文件 id
+     * @return 没有可写的磁盘时返回 null
+     */
+    public LocalFileStore select(String id) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Set<Disk> tried = new HashSet<>();
+        Entry<Long, Disk> entry = ring.ceilingEntry(hash(id));
+        for (int i = 0; i < ring.size() && tried.size() < disks.size(); i++) {
+            if (null == entry) {
+                entry = ring.firstEntry();
+            }
+            Disk disk = entry.getValue();
+            if (disk.state == State.UP) {
+                return disk.store;
+            }
+            tried.add(disk);
+            entry = ring.higherEntry(entry.getKey());
+        }
+        return null;
+    }
+
+    /**
+     * 检查所有磁盘
+     *
+     * @param minFree 最小可用空间
+     */
+    public void check(long minFree) {
+        for (Entry<String, Disk> e : disks.entrySet()) {
+            Disk disk = e.getValue();
+            State state;
+            try {
+                Files.createDirectories(disk.root.toPath());
+                File probe = new File(disk.root, PROBE);
+                Files.writeString(probe.toPath(), String.valueOf(System.currentTimeMillis()), StandardCharsets.UTF_8);
+                Files.delete(probe.toPath());
+                disk.usable = disk.root.getUsableSpace();
+                state = disk.usable < minFree ? State.READ_ONLY : State.UP;
+            } catch (IOException | SecurityException ex) {
+                log.error("disk check failed: {}, {}", e.getKey(), ex.getMessage());
+                state = State.DOWN;
+            }
+            if (state != disk.state) {
+                log.warn("disk state: {}, {} -> {}, usable: {}", e.getKey(), disk.state, state, disk.usable);
+                disk.state = state;
+            }
+        }
+    }
+
+    /**
+     * FNV-1a 64 位哈希，再做一次混合使虚拟节点分布均匀
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
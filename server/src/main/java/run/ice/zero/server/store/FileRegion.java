@@ -0,0 +1,23 @@
+package run.ice.zero.server.store;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.io.File;
+
+/**
+ * 本地文件中的一段区间
+ *
+ * @author DaoDao
+ */
+@Data
+@AllArgsConstructor
+public class FileRegion {
+
+    private File file;
+
+    private long position;
+
+    private long length;
+
+}
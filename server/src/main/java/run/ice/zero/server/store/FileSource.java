@@ -0,0 +1,37 @@
+package run.ice.zero.server.store;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 待输出的文件
+ *
+ * @author DaoDao
+ */
+@Data
+@AllArgsConstructor
+public class FileSource {
+
+    private FileStore store;
+
+    private String key;
+
+    /**
+     * 本地文件区间，为 null 时通过 {@link FileStore#get(String, long, long)} 读取
+     */
+    private FileRegion region;
+
+    private long length;
+
+    /**
+     * 热点缓存中的文件内容（只读直接内存），不为 null 时直接从内存输出
+     */
+    private ByteBuffer buffer;
+
+    public FileSource(FileStore store, String key, FileRegion region, long length) {
+        this(store, key, region, length, null);
+    }
+
+}
@@ -0,0 +1,23 @@
+package run.ice.zero.server.store;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * @author DaoDao
+ */
+@Data
+@AllArgsConstructor
+public class FileStat {
+
+    /**
+     * 大小
+     */
+    private long size;
+
+    /**
+     * 最后修改时间（毫秒）
+     */
+    private long lastModified;
+
+}
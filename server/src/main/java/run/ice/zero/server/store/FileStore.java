@@ -0,0 +1,82 @@
+package run.ice.zero.server.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 文件存储
+ * <p>
+ * key 为存储内的相对路径，例如 2020/02/20/20200220000000000000000.png
+ *
+ * @author DaoDao
+ */
+public interface FileStore {
+
+    /**
+     * 存储名称，记录在 FileInfo.store 中
+     *
+     * @return 名称
+     */
+    String name();
+
+    /**
+     * 写入暂存文件，成功后暂存文件由存储接管（移动或删除）
+     *
+     * @param key  key
+     * @param file 暂存文件
+     * @throws IOException IOException
+     */
+    void put(String key, File file) throws IOException;
+
+    /**
+     * 流式写入
+     *
+     * @param key  key
+     * @param is   数据流
+     * @param size 数据大小
+     * @throws IOException IOException
+     */
+    void put(String key, InputStream is, long size) throws IOException;
+
+    /**
+     * 读取 [position, position + count) 区间
+     *
+     * @param key      key
+     * @param position 起始位置
+     * @param count    字节数
+     * @return 数据流
+     * @throws IOException 不存在时抛出 {@link java.nio.file.NoSuchFileException}
+     */
+    InputStream get(String key, long position, long count) throws IOException;
+
+    /**
+     * 删除
+     *
+     * @param key key
+     * @return 是否删除
+     * @throws IOException IOException
+     */
+    boolean delete(String key) throws IOException;
+
+    /**
+     * 查询
+     *
+     * @param key key
+     * @return 不存在时返回 null
+     * @throws IOException IOException
+     */
+    FileStat stat(String key) throws IOException;
+
+    /**
+     * 数据所在的本地文件区间，可以使用 sendfile 零拷贝输出；远程存储返回 null
+     *
+     * @param key key
+     * @return FileRegion
+     * @throws IOException 不存在时抛出 {@link java.nio.file.NoSuchFileException}
+     */
+    default FileRegion region(String key) throws IOException {
+        return null;
+    }
+
+}
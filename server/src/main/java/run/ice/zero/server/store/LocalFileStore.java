@@ -0,0 +1,150 @@
+package run.ice.zero.server.store;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import run.ice.zero.server.util.FileUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 本地文件系统存储，key 为根目录下的相对路径
+ *
+ * @author DaoDao
+ */
+@Slf4j
+public class LocalFileStore implements FileStore {
+
+    public static final String NAME = "local";
+
+    private final String name;
+
+    private final String root;
+
+    private final StoreMetrics metrics;
+
+    public LocalFileStore(String root, MeterRegistry meterRegistry) {
+        this(NAME, root, meterRegistry);
+    }
+
+    public LocalFileStore(String name, String root, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.root = root.endsWith("/") ? root : root + "/";
+        this.metrics = new StoreMetrics(meterRegistry, name);
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    public File file(String key) {
+        return new File(root + key);
+    }
+
+    @Override
+    public void put(String key, File file) throws IOException {
+        long start = metrics.start();
+        File target = file(key);
+        mkdirs(target);
+        long size = file.length();
+        try {
+            Files.move(file.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            /*
+             * 暂存文件应当位于同一文件系统（见 FileService.part），不在时（例如升级之前创建的分片上传会话）复制后删除暂存文件
+             */
+            try (InputStream is = Files.newInputStream(file.toPath())) {
+                write(target, is);
+            }
+            FileUtil.delete(file);
+        }
+        metrics.bytes("put", size);
+        metrics.record("put", start);
+    }
+
+    @Override
+    public void put(String key, InputStream is, long size) throws IOException {
+        long start = metrics.start();
+        File target = file(key);
+        mkdirs(target);
+        metrics.bytes("put", write(target, is));
+        metrics.record("put", start);
+    }
+
+    /**
+     * 写入同目录下的暂存文件，刷盘后原子重命名
+     */
+    private static long write(File target, InputStream is) throws IOException {
+        File part = new File(target.getPath() + FileUtil.PART_SUFFIX);
+        long n;
+        try (FileChannel channel = FileChannel.open(part.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            n = is.transferTo(Channels.newOutputStream(channel));
+            channel.force(false);
+        } catch (IOException e) {
+            FileUtil.delete(part);
+            throw e;
+        }
+        Files.move(part.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        return n;
+    }
+
+    @Override
+    public InputStream get(String key, long position, long count) throws IOException {
+        long start = metrics.start();
+        File file = file(key);
+        if (!file.isFile()) {
+            throw new NoSuchFileException(key);
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        channel.position(position);
+        metrics.bytes("get", count);
+        metrics.record("get", start);
+        return FileUtil.bounded(Channels.newInputStream(channel), count);
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        long start = metrics.start();
+        boolean b = Files.deleteIfExists(file(key).toPath());
+        metrics.record("delete", start);
+        return b;
+    }
+
+    @Override
+    public FileStat stat(String key) {
+        long start = metrics.start();
+        File file = file(key);
+        FileStat stat = file.isFile() ? new FileStat(file.length(), file.lastModified()) : null;
+        metrics.record("stat", start);
+        return stat;
+    }
+
+    @Override
+    public FileRegion region(String key) throws IOException {
+        File file = file(key);
+        if (!file.isFile()) {
+            throw new NoSuchFileException(key);
+        }
+        return new FileRegion(file, 0L, file.length());
+    }
+
+    private static void mkdirs(File file) {
+        File dir = file.getParentFile();
+        if (!dir.exists() || !dir.isDirectory()) {
+            boolean b = dir.mkdirs();
+            if (!b) {
+                log.error("创建目录失败！");
+            }
+        }
+    }
+
+}
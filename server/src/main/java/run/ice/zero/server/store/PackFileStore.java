@@ -0,0 +1,268 @@
+package run.ice.zero.server.store;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import run.ice.zero.server.entity.FilePack;
+import run.ice.zero.server.repository.FilePackRepository;
+import run.ice.zero.server.util.FileUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 打包存储
+ * <p>
+ * 数据追加写入 root/pack/ 下的段文件，段文件达到上限后切换到下一个；
+ * 索引 key -> (segment, position, length) 保存在 file_pack 表中。
+ * 读取时按区间内存映射，或者直接交给 sendfile 按偏移量输出。
+ * 删除只标记无效，空间由压缩任务回收。
+ *
+ * @author DaoDao
+ */
+@Slf4j
+public class PackFileStore implements FileStore {
+
+    public static final String NAME = "pack";
+
+    public static final String DIRECTORY = "pack";
+
+    public static final String SUFFIX = ".pack";
+
+    private final File dir;
+
+    private final long segmentSize;
+
+    private final FilePackRepository filePackRepository;
+
+    private final StoreMetrics metrics;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private int segment;
+
+    private FileChannel channel;
+
+    public PackFileStore(String root, long segmentSize, FilePackRepository filePackRepository, MeterRegistry meterRegistry) {
+        this.dir = new File((root.endsWith("/") ? root : root + "/") + DIRECTORY);
+        this.segmentSize = segmentSize;
+        this.filePackRepository = filePackRepository;
+        this.metrics = new StoreMetrics(meterRegistry, NAME);
+        this.segment = 0;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    public File segment(int segment) {
+        return new File(dir, String.format("%08d", segment) + SUFFIX);
+    }
+
+    @Override
+    public void put(String key, File file) throws IOException {
+        try (FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            append(key, source, source.size());
+        }
+        FileUtil.delete(file);
+    }
+
+    @Override
+    public void put(String key, InputStream is, long size) throws IOException {
+        append(key, Channels.newChannel(is), size);
+    }
+
+    /**
+     * 追加写入当前段文件，写入完成后保存索引
+     */
+    private void append(String key, ReadableByteChannel source, long size) throws IOException {
+        long start = metrics.start();
+        long[] location = write(key, source, size);
+        FilePack filePack = new FilePack();
+        filePack.setId(key);
+        filePack.setSegment((int) location[0]);
+        filePack.setPosition(location[1]);
+        filePack.setLength(size);
+        filePack.setValid(Boolean.TRUE);
+        filePackRepository.save(filePack);
+        metrics.bytes("put", size);
+        metrics.record("put", start);
+    }
+
+    /**
+     * 写入当前段文件
+     *
+     * @return [segment, position]
+     */
+    private long[] write(String key, ReadableByteChannel source, long size) throws IOException {
+        lock.lock();
+        try {
+            FileChannel target = channel(size);
+            long position = target.size();
+            long count = 0L;
+            while (count < size) {
+                long n = target.transferFrom(source, position + count, size - count);
+                if (n <= 0) {
+                    break;
+                }
+                count += n;
+            }
+            if (count != size) {
+                target.truncate(position);
+                throw new IOException("pack append " + key + " : " + count + " != " + size);
+            }
+            target.force(false);
+            return new long[]{segment, position};
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 压缩：把数据复制到当前段文件末尾并更新索引
+     * <p>
+     * 复制期间被删除的数据不更新索引，复制的部分在下次压缩时回收。
+     *
+     * @param filePack 原位置
+     * @return 是否已移动
+     * @throws IOException IOException
+     */
+    public boolean relocate(FilePack filePack) throws IOException {
+        long start = metrics.start();
+        long[] location;
+        try (FileChannel source = FileChannel.open(segment(filePack.getSegment()).toPath(), StandardOpenOption.READ)) {
+            source.position(filePack.getPosition());
+            location = write(filePack.getId(), source, filePack.getLength());
+        }
+        boolean b = filePackRepository.relocate(filePack.getId(), filePack.getSegment(), (int) location[0], location[1]) > 0;
+        metrics.bytes("compact", filePack.getLength());
+        metrics.record("compact", start);
+        return b;
+    }
+
+    /**
+     * 正在写入的段文件序号，该序号及之后的段文件不能压缩
+     *
+     * @return 段文件序号
+     */
+    public int active() {
+        lock.lock();
+        try {
+            return null == channel ? Math.max(last(), 1) : segment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 已有的段文件序号
+     *
+     * @return 升序
+     */
+    public List<Integer> segments() {
+        List<Integer> list = new ArrayList<>();
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (null != files) {
+            for (File file : files) {
+                String name = file.getName();
+                try {
+                    list.add(Integer.parseInt(name.substring(0, name.length() - SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    log.warn("unknown pack file: {}", name);
+                }
+            }
+        }
+        Collections.sort(list);
+        return list;
+    }
+
+    /**
+     * 当前段文件，空间不足时切换到下一个段文件
+     */
+    private FileChannel channel(long size) throws IOException {
+        if (null == channel) {
+            if (!dir.exists() || !dir.isDirectory()) {
+                boolean b = dir.mkdirs();
+                if (!b) {
+                    log.error("创建目录失败！");
+                }
+            }
+            segment = Math.max(last(), 1);
+            channel = FileChannel.open(segment(segment).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+        if (channel.size() > 0 && channel.size() + size > segmentSize) {
+            channel.close();
+            segment++;
+            channel = FileChannel.open(segment(segment).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+        return channel;
+    }
+
+    /**
+     * 已有的最大段文件序号
+     */
+    private int last() {
+        List<Integer> list = segments();
+        return list.isEmpty() ? 0 : list.getLast();
+    }
+
+    @Override
+    public InputStream get(String key, long position, long count) throws IOException {
+        long start = metrics.start();
+        FilePack filePack = pack(key);
+        File file = segment(filePack.getSegment());
+        InputStream is;
+        try (FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            is = FileUtil.stream(source.map(FileChannel.MapMode.READ_ONLY, filePack.getPosition() + position, count));
+        }
+        metrics.bytes("get", count);
+        metrics.record("get", start);
+        return is;
+    }
+
+    @Override
+    public boolean delete(String key) {
+        long start = metrics.start();
+        boolean b = filePackRepository.invalidate(key) > 0;
+        metrics.record("delete", start);
+        return b;
+    }
+
+    @Override
+    public FileStat stat(String key) {
+        long start = metrics.start();
+        Optional<FilePack> optional = filePackRepository.findByIdAndValid(key, Boolean.TRUE);
+        FileStat stat = optional
+                .map(p -> new FileStat(p.getLength(), p.getCreateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()))
+                .orElse(null);
+        metrics.record("stat", start);
+        return stat;
+    }
+
+    @Override
+    public FileRegion region(String key) throws IOException {
+        FilePack filePack = pack(key);
+        return new FileRegion(segment(filePack.getSegment()), filePack.getPosition(), filePack.getLength());
+    }
+
+    private FilePack pack(String key) throws NoSuchFileException {
+        Optional<FilePack> optional = filePackRepository.findByIdAndValid(key, Boolean.TRUE);
+        if (optional.isEmpty()) {
+            throw new NoSuchFileException(key);
+        }
+        return optional.get();
+    }
+
+}
@@ -0,0 +1,249 @@
+package run.ice.zero.server.store;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import run.ice.zero.server.config.S3Config;
+import run.ice.zero.server.util.FileUtil;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.security.GeneralSecurityException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+
+/**
+ * S3 兼容对象存储
+ * <p>
+ * 使用 path-style 地址 endpoint/bucket/key 和 AWS Signature V4 签名，
+ * 请求体不参与签名（UNSIGNED-PAYLOAD），上传和下载都是流式的。
+ *
+ * @author DaoDao
+ */
+@Slf4j
+public class S3FileStore implements FileStore {
+
+    public static final String NAME = "s3";
+
+    private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+
+    private static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+
+    private static final String SIGNED_HEADERS = "host;x-amz-content-sha256;x-amz-date";
+
+    private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+
+    private final S3Config config;
+
+    private final HttpClient httpClient;
+
+    private final StoreMetrics metrics;
+
+    public S3FileStore(S3Config config, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(config.getTimeout())
+                .build();
+        this.metrics = new StoreMetrics(meterRegistry, NAME);
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public void put(String key, File file) throws IOException {
+        long start = metrics.start();
+        long size = file.length();
+        HttpRequest request = request("PUT", key)
+                .timeout(config.getTimeout())
+                .PUT(HttpRequest.BodyPublishers.ofFile(file.toPath()))
+                .build();
+        HttpResponse<Void> response = send(request, HttpResponse.BodyHandlers.discarding());
+        check("put", key, response.statusCode());
+        FileUtil.delete(file);
+        metrics.bytes("put", size);
+        metrics.record("put", start);
+    }
+
+    @Override
+    public void put(String key, InputStream is, long size) throws IOException {
+        long start = metrics.start();
+        HttpRequest request = request("PUT", key)
+                .timeout(config.getTimeout())
+                .PUT(HttpRequest.BodyPublishers.fromPublisher(HttpRequest.BodyPublishers.ofInputStream(() -> is), size))
+                .build();
+        HttpResponse<Void> response = send(request, HttpResponse.BodyHandlers.discarding());
+        check("put", key, response.statusCode());
+        metrics.bytes("put", size);
+        metrics.record("put", start);
+    }
+
+    @Override
+    public InputStream get(String key, long position, long count) throws IOException {
+        if (count <= 0) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        long start = metrics.start();
+        HttpRequest request = request("GET", key)
+                .header("Range", "bytes=" + position + "-" + (position + count - 1))
+                .timeout(config.getTimeout())
+                .GET()
+                .build();
+        HttpResponse<InputStream> response = send(request, HttpResponse.BodyHandlers.ofInputStream());
+        int status = response.statusCode();
+        if (status == 404) {
+            response.body().close();
+            throw new NoSuchFileException(key);
+        }
+        if (status != 200 && status != 206) {
+            response.body().close();
+            check("get", key, status);
+        }
+        metrics.bytes("get", count);
+        metrics.record("get", start);
+        InputStream body = response.body();
+        if (status == 200 && position > 0) {
+            body.skipNBytes(position);
+        }
+        return FileUtil.bounded(body, count);
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        long start = metrics.start();
+        HttpRequest request = request("DELETE", key)
+                .timeout(config.getTimeout())
+                .DELETE()
+                .build();
+        HttpResponse<Void> response = send(request, HttpResponse.BodyHandlers.discarding());
+        int status = response.statusCode();
+        metrics.record("delete", start);
+        if (status == 404) {
+            return false;
+        }
+        check("delete", key, status);
+        return true;
+    }
+
+    @Override
+    public FileStat stat(String key) throws IOException {
+        long start = metrics.start();
+        HttpRequest request = request("HEAD", key)
+                .timeout(config.getTimeout())
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .build();
+        HttpResponse<Void> response = send(request, HttpResponse.BodyHandlers.discarding());
+        int status = response.statusCode();
+        metrics.record("stat", start);
+        if (status == 404) {
+            return null;
+        }
+        check("stat", key, status);
+        long size = response.headers().firstValueAsLong("Content-Length").orElse(0L);
+        long lastModified = response.headers().firstValue("Last-Modified")
+                .map(s -> ZonedDateTime.parse(s, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli())
+                .orElse(0L);
+        return new FileStat(size, lastModified);
+    }
+
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException {
+        try {
+            return httpClient.send(request, handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+    }
+
+    private static void check(String operation, String key, int status) throws IOException {
+        if (status < 200 || status >= 300) {
+            throw new IOException("s3 " + operation + " " + key + " : " + status);
+        }
+    }
+
+    /**
+     * 创建带有 Signature V4 签名的请求
+     */
+    private HttpRequest.Builder request(String method, String key) {
+        String path = "/" + config.getBucket() + "/" + encode(key);
+        URI uri = URI.create(config.getEndpoint().replaceAll("/+$", "") + path);
+        String host = uri.getHost() + (uri.getPort() == -1 ? "" : ":" + uri.getPort());
+
+        ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+        String amzDate = now.format(AMZ_DATE);
+        String date = amzDate.substring(0, 8);
+        String scope = date + "/" + config.getRegion() + "/s3/aws4_request";
+
+        String canonicalRequest = method + "\n"
+                + path + "\n"
+                + "\n"
+                + "host:" + host + "\n"
+                + "x-amz-content-sha256:" + UNSIGNED_PAYLOAD + "\n"
+                + "x-amz-date:" + amzDate + "\n"
+                + "\n"
+                + SIGNED_HEADERS + "\n"
+                + UNSIGNED_PAYLOAD;
+        String stringToSign = ALGORITHM + "\n"
+                + amzDate + "\n"
+                + scope + "\n"
+                + HexFormat.of().formatHex(FileUtil.sha256().digest(canonicalRequest.getBytes(StandardCharsets.UTF_8)));
+
+        byte[] key0 = hmac(("AWS4" + config.getSecretKey()).getBytes(StandardCharsets.UTF_8), date);
+        byte[] key1 = hmac(key0, config.getRegion());
+        byte[] key2 = hmac(key1, "s3");
+        byte[] signingKey = hmac(key2, "aws4_request");
+        String signature = HexFormat.of().formatHex(hmac(signingKey, stringToSign));
+
+        String authorization = ALGORITHM
+                + " Credential=" + config.getAccessKey() + "/" + scope
+                + ", SignedHeaders=" + SIGNED_HEADERS
+                + ", Signature=" + signature;
+
+        return HttpRequest.newBuilder(uri)
+                .header("x-amz-content-sha256", UNSIGNED_PAYLOAD)
+                .header("x-amz-date", amzDate)
+                .header("Authorization", authorization);
+    }
+
+    private static byte[] hmac(byte[] key, String data) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * S3 URI 编码，保留非保留字符和路径分隔符
+     */
+    static String encode(String key) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '~' || c == '/') {
+                sb.append(c);
+            } else {
+                sb.append('%').append(String.format("%02X", b & 0xFF));
+            }
+        }
+        return sb.toString();
+    }
+
+}
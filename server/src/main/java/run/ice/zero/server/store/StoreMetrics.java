@@ -0,0 +1,40 @@
+package run.ice.zero.server.store;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 存储指标，按存储名称和操作打标签
+ *
+ * @author DaoDao
+ */
+public class StoreMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    private final String store;
+
+    public StoreMetrics(MeterRegistry meterRegistry, String store) {
+        this.meterRegistry = meterRegistry;
+        this.store = store;
+    }
+
+    public long start() {
+        return System.nanoTime();
+    }
+
+    public void record(String operation, long start) {
+        Timer.builder("zero.file.store")
+                .tag("store", store)
+                .tag("operation", operation)
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    public void bytes(String operation, long bytes) {
+        meterRegistry.counter("zero.file.store.bytes", "store", store, "operation", operation).increment(bytes);
+    }
+
+}
@@ -0,0 +1,91 @@
+package run.ice.zero.server.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 布隆过滤器
+ * <p>
+ * 按预计元素数和误判率确定位数和哈希函数个数，位数组为 AtomicLongArray，添加和查询都不加锁。
+ * 不存在的元素可能误判为存在（概率约为 fpp），存在的元素不会误判为不存在；元素超过预计数量时误判率升高。
+ *
+ * @author DaoDao
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray bits;
+
+    private final long size;
+
+    private final int hashes;
+
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * @param expected 预计元素数
+     * @param fpp      误判率
+     */
+    public BloomFilter(long expected, double fpp) {
+        long n = Math.max(expected, 1L);
+        double p = Math.min(Math.max(fpp, 1e-9), 0.5);
+        long m = (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min((m + 63) / 64, Integer.MAX_VALUE - 8);
+        this.bits = new AtomicLongArray(Math.max(words, 1));
+        this.size = (long) bits.length() * 64;
+        this.hashes = Math.max(1, (int) Math.round((double) size / n * Math.log(2)));
+    }
+
+    public void add(String value) {
+        long h1 = hash(value, 0x9E3779B97F4A7C15L);
+        long h2 = hash(value, 0xC2B2AE3D27D4EB4FL) | 1L;
+        boolean changed = false;
+        for (int i = 0; i < hashes; i++) {
+            long index = Math.floorMod(h1 + i * h2, size);
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long old = bits.getAndAccumulate(word, mask, (a, b) -> a | b);
+            changed |= (old & mask) == 0;
+        }
+        if (changed) {
+            count.increment();
+        }
+    }
+
+    /**
+     * @return false 表示一定不存在
+     */
+    public boolean mightContain(String value) {
+        long h1 = hash(value, 0x9E3779B97F4A7C15L);
+        long h2 = hash(value, 0xC2B2AE3D27D4EB4FL) | 1L;
+        for (int i = 0; i < hashes; i++) {
+            long index = Math.floorMod(h1 + i * h2, size);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 添加的不同元素数（近似）
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    private static long hash(String value, long seed) {
+        long h = seed;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
@@ -3,23 +3,172 @@ package run.ice.zero.server.util;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 @Slf4j
 public class FileUtil {
 
-    public static String contentType(File file) {
-        String type = null;
+    /**
+     * 暂存目录，位于文件根目录下
+     */
+    public static final String TMP = "tmp";
+
+    /**
+     * 写入中的暂存文件后缀
+     */
+    public static final String PART_SUFFIX = ".part";
+
+    /**
+     * 用于识别文件类型的头部字节数，覆盖 tar 等偏移较大的魔数
+     */
+    public static final int HEAD_SIZE = 512;
+
+    /**
+     * 根据文件头部字节和文件名识别文件类型
+     *
+     * @param head 文件头部字节
+     * @param name 文件名
+     * @return 文件类型
+     * @see MimeUtil#type(byte[], int, String)
+     */
+    public static String contentType(byte[] head, String name) {
+        return MimeUtil.type(head, null == head ? 0 : head.length, name);
+    }
+
+    public static MessageDigest sha256() {
         try {
-            type = Files.probeContentType(file.toPath());
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 将 buffer 的前 length 个字节完整写入 channel
+     *
+     * @param channel FileChannel
+     * @param buffer  byte[]
+     * @param length  长度
+     * @return 写入的字节数
+     * @throws IOException IOException
+     */
+    public static int write(FileChannel channel, byte[] buffer, int length) throws IOException {
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, length);
+        while (byteBuffer.hasRemaining()) {
+            channel.write(byteBuffer);
+        }
+        return length;
+    }
+
+    /**
+     * 限制最多读取 count 个字节
+     *
+     * @param is    InputStream
+     * @param count 字节数
+     * @return InputStream
+     */
+    public static InputStream bounded(InputStream is, long count) {
+        return new FilterInputStream(is) {
+
+            private long remaining = count;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int b = super.read();
+                if (b >= 0) {
+                    remaining--;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int n = super.read(b, off, (int) Math.min(len, remaining));
+                if (n > 0) {
+                    remaining -= n;
+                }
+                return n;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(Math.min(n, remaining));
+                remaining -= skipped;
+                return skipped;
+            }
+
+            @Override
+            public int available() throws IOException {
+                return (int) Math.min(super.available(), remaining);
+            }
+
+        };
+    }
+
+    /**
+     * 读取 ByteBuffer 剩余内容的 InputStream
+     *
+     * @param buffer ByteBuffer
+     * @return InputStream
+     */
+    public static InputStream stream(ByteBuffer buffer) {
+        return new InputStream() {
+
+            @Override
+            public int read() {
+                return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (!buffer.hasRemaining()) {
+                    return -1;
+                }
+                int n = Math.min(len, buffer.remaining());
+                buffer.get(b, off, n);
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return buffer.remaining();
+            }
+
+        };
+    }
+
+    public static void delete(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
         } catch (IOException e) {
             log.error(e.getMessage(), e);
         }
-        if (null == type) {
-            type = "application/octet-stream";
-        }
-        return type;
+    }
+
+    /**
+     * 派生文件（变体、水印、压缩）的存储 key：{directory}/ab/cd/{name}{suffix}，按名称末尾分散目录
+     *
+     * @param directory 目录
+     * @param name      hash 或者 id
+     * @param suffix    后缀
+     * @return key
+     */
+    public static String key(String directory, String name, String suffix) {
+        int n = name.length();
+        return directory + "/" + name.substring(n - 2) + "/" + name.substring(n - 4, n - 2) + "/" + name + suffix;
     }
 
     public static String extension(String fileName) {
@@ -0,0 +1,100 @@
+package run.ice.zero.server.util;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * 图片处理
+ *
+ * @author DaoDao
+ */
+public class ImageUtil {
+
+    public static final String PNG = "image/png";
+
+    public static final String JPEG = "image/jpeg";
+
+    /**
+     * 可以处理的图片类型
+     */
+    public static final Set<String> TYPES = Set.of(JPEG, PNG, "image/gif", "image/bmp");
+
+    /**
+     * 最大像素数，防止解码超大图片耗尽内存
+     */
+    public static final long MAX_PIXELS = 40_000_000L;
+
+    public static boolean supported(String type) {
+        return null != type && TYPES.contains(type);
+    }
+
+    /**
+     * 处理后的图片类型：png 和 gif 保留透明通道输出 png，其它输出 jpeg
+     *
+     * @param type 原图类型
+     * @return 输出类型
+     */
+    public static String output(String type) {
+        return PNG.equals(type) || "image/gif".equals(type) ? PNG : JPEG;
+    }
+
+    /**
+     * 解码图片，尺寸远大于目标时按整数倍降采样解码，减少内存和解码时间
+     *
+     * @param is   数据流
+     * @param size 目标尺寸（最长边），0 表示原尺寸
+     * @return 无法解码、超过最大像素数或者不大于目标尺寸时返回 null
+     * @throws IOException IOException
+     */
+    public static BufferedImage read(InputStream is, int size) throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(is)) {
+            if (null == iis) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > MAX_PIXELS || (size > 0 && Math.max(width, height) <= size)) {
+                    return null;
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = size > 0 ? Math.max(width, height) / (size * 2) : 1;
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 编码图片
+     *
+     * @param image 图片
+     * @param type  {@link #PNG} 或者 {@link #JPEG}
+     * @return 图片数据
+     * @throws IOException IOException
+     */
+    public static byte[] write(BufferedImage image, String type) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ImageIO.write(image, PNG.equals(type) ? "png" : "jpg", os);
+        return os.toByteArray();
+    }
+
+}
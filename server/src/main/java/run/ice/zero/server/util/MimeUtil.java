@@ -0,0 +1,314 @@
+package run.ice.zero.server.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 文件类型识别
+ * <p>
+ * 先按文件头部的魔数匹配，再按扩展名查表，都不匹配时根据头部字节判断是否为文本。
+ * 魔数表和扩展名表在类加载时构建，识别过程只有内存比较，不访问磁盘。
+ * zip、ole 等容器格式优先使用扩展名对应的更具体的类型（例如 docx）。
+ * html、svg、xml 可以执行脚本，只按扩展名识别，魔数匹配时使用扩展名对应的类型（没有时为 text/plain），
+ * 避免内容为 html 的 a.png 以 text/html 输出（存储型 XSS）。
+ *
+ * @author DaoDao
+ */
+public class MimeUtil {
+
+    public static final String OCTET_STREAM = "application/octet-stream";
+
+    private static final String ZIP = "application/zip";
+
+    private static final String XML = "application/xml";
+
+    private static final String TEXT = "text/plain";
+
+    private static final String OLE = "application/x-ole-storage";
+
+    /**
+     * 可以执行脚本的类型，不能由魔数升级
+     */
+    private static final Set<String> MARKUPS = Set.of("text/html", "image/svg+xml", XML);
+
+    /**
+     * 魔数，bytes 中的 -1 表示任意字节
+     */
+    private record Magic(int offset, int[] bytes, String type) {
+
+        boolean matches(byte[] head, int length) {
+            if (offset + bytes.length > length) {
+                return false;
+            }
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] >= 0 && (head[offset + i] & 0xFF) != bytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+    /**
+     * 按第一个确定字节的值索引的魔数表
+     */
+    @SuppressWarnings("unchecked")
+    private static final List<Magic>[] MAGICS = new List[256];
+
+    /**
+     * 第一个字节不确定（offset > 0）的魔数
+     */
+    private static final List<Magic> OTHERS = new ArrayList<>();
+
+    private static final Map<String, String> EXTENSIONS = new HashMap<>();
+
+    static {
+        // image
+        magic(0, "89 50 4E 47 0D 0A 1A 0A", "image/png");
+        magic(0, "FF D8 FF", "image/jpeg");
+        magic(0, "47 49 46 38 37 61", "image/gif");
+        magic(0, "47 49 46 38 39 61", "image/gif");
+        magic(0, "52 49 46 46 ?? ?? ?? ?? 57 45 42 50", "image/webp");
+        magic(0, "42 4D", "image/bmp");
+        magic(0, "49 49 2A 00", "image/tiff");
+        magic(0, "4D 4D 00 2A", "image/tiff");
+        magic(0, "00 00 01 00", "image/vnd.microsoft.icon");
+        magic(0, "38 42 50 53", "image/vnd.adobe.photoshop");
+        magic(4, "66 74 79 70 61 76 69 66", "image/avif");
+        magic(4, "66 74 79 70 68 65 69 63", "image/heic");
+        magic(4, "66 74 79 70 6D 69 66 31", "image/heif");
+        // audio / video
+        magic(0, "52 49 46 46 ?? ?? ?? ?? 57 41 56 45", "audio/wav");
+        magic(0, "52 49 46 46 ?? ?? ?? ?? 41 56 49 20", "video/x-msvideo");
+        magic(0, "49 44 33", "audio/mpeg");
+        magic(0, "FF FB", "audio/mpeg");
+        magic(0, "FF F3", "audio/mpeg");
+        magic(0, "FF F2", "audio/mpeg");
+        magic(0, "4F 67 67 53", "audio/ogg");
+        magic(0, "66 4C 61 43", "audio/flac");
+        magic(0, "1A 45 DF A3", "video/webm");
+        magic(4, "66 74 79 70 71 74 20 20", "video/quicktime");
+        magic(4, "66 74 79 70 4D 34 41 20", "audio/mp4");
+        magic(4, "66 74 79 70", "video/mp4");
+        magic(0, "46 4C 56 01", "video/x-flv");
+        // document / archive
+        magic(0, "25 50 44 46 2D", "application/pdf");
+        magic(0, "50 4B 03 04", ZIP);
+        magic(0, "50 4B 05 06", ZIP);
+        magic(0, "1F 8B", "application/gzip");
+        magic(0, "42 5A 68", "application/x-bzip2");
+        magic(0, "FD 37 7A 58 5A 00", "application/x-xz");
+        magic(0, "28 B5 2F FD", "application/zstd");
+        magic(0, "37 7A BC AF 27 1C", "application/x-7z-compressed");
+        magic(0, "52 61 72 21 1A 07", "application/vnd.rar");
+        magic(0, "D0 CF 11 E0 A1 B1 1A E1", OLE);
+        magic(0, "7B 5C 72 74 66", "application/rtf");
+        magic(257, "75 73 74 61 72", "application/x-tar");
+        // font
+        magic(0, "77 4F 46 46", "font/woff");
+        magic(0, "77 4F 46 32", "font/woff2");
+        magic(0, "00 01 00 00 00", "font/ttf");
+        magic(0, "4F 54 54 4F", "font/otf");
+        // executable / data
+        magic(0, "7F 45 4C 46", "application/x-elf");
+        magic(0, "4D 5A", "application/vnd.microsoft.portable-executable");
+        magic(0, "CA FE BA BE", "application/java-vm");
+        magic(0, "00 61 73 6D", "application/wasm");
+        magic(0, "53 51 4C 69 74 65 20 66 6F 72 6D 61 74 20 33 00", "application/vnd.sqlite3");
+        // text
+        magic(0, "3C 3F 78 6D 6C", XML);
+        magic(0, "EF BB BF 3C 3F 78 6D 6C", XML);
+        magic(0, "3C 73 76 67", "image/svg+xml");
+        magic(0, "3C 21 44 4F 43 54 59 50 45 20 68 74 6D 6C", "text/html");
+        magic(0, "3C 21 64 6F 63 74 79 70 65 20 68 74 6D 6C", "text/html");
+        magic(0, "3C 68 74 6D 6C", "text/html");
+
+        extension("text/plain", "txt", "log", "ini", "conf");
+        extension("text/html", "html", "htm");
+        extension("text/css", "css");
+        extension("text/csv", "csv");
+        extension("text/markdown", "md", "markdown");
+        extension("text/javascript", "js", "mjs");
+        extension("application/json", "json", "map");
+        extension("application/x-ndjson", "ndjson", "jsonl");
+        extension("application/yaml", "yaml", "yml");
+        extension(XML, "xml", "xsd", "xsl");
+        extension("image/svg+xml", "svg");
+        extension("image/png", "png");
+        extension("image/jpeg", "jpg", "jpeg", "jpe");
+        extension("image/gif", "gif");
+        extension("image/webp", "webp");
+        extension("image/bmp", "bmp");
+        extension("image/tiff", "tif", "tiff");
+        extension("image/vnd.microsoft.icon", "ico");
+        extension("image/avif", "avif");
+        extension("image/heic", "heic");
+        extension("audio/mpeg", "mp3");
+        extension("audio/wav", "wav");
+        extension("audio/ogg", "ogg", "oga");
+        extension("audio/flac", "flac");
+        extension("audio/aac", "aac");
+        extension("audio/mp4", "m4a");
+        extension("video/mp4", "mp4", "m4v");
+        extension("video/webm", "webm");
+        extension("video/x-matroska", "mkv");
+        extension("video/quicktime", "mov");
+        extension("video/x-msvideo", "avi");
+        extension("application/pdf", "pdf");
+        extension(ZIP, "zip");
+        extension("application/gzip", "gz", "tgz");
+        extension("application/x-tar", "tar");
+        extension("application/x-7z-compressed", "7z");
+        extension("application/vnd.rar", "rar");
+        extension("application/msword", "doc");
+        extension("application/vnd.ms-excel", "xls");
+        extension("application/vnd.ms-powerpoint", "ppt");
+        extension("application/vnd.openxmlformats-officedocument.wordprocessingml.document", "docx");
+        extension("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", "xlsx");
+        extension("application/vnd.openxmlformats-officedocument.presentationml.presentation", "pptx");
+        extension("application/vnd.oasis.opendocument.text", "odt");
+        extension("application/vnd.oasis.opendocument.spreadsheet", "ods");
+        extension("application/epub+zip", "epub");
+        extension("application/java-archive", "jar", "war");
+        extension("application/vnd.android.package-archive", "apk");
+        extension("application/rtf", "rtf");
+        extension("font/woff", "woff");
+        extension("font/woff2", "woff2");
+        extension("font/ttf", "ttf");
+        extension("font/otf", "otf");
+        extension("application/wasm", "wasm");
+    }
+
+    private static void magic(int offset, String hex, String type) {
+        String[] parts = hex.split(" ");
+        int[] bytes = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            bytes[i] = "??".equals(parts[i]) ? -1 : Integer.parseInt(parts[i], 16);
+        }
+        Magic magic = new Magic(offset, bytes, type);
+        if (offset == 0 && bytes[0] >= 0) {
+            if (null == MAGICS[bytes[0]]) {
+                MAGICS[bytes[0]] = new ArrayList<>();
+            }
+            MAGICS[bytes[0]].add(magic);
+        } else {
+            OTHERS.add(magic);
+        }
+    }
+
+    private static void extension(String type, String... extensions) {
+        for (String extension : extensions) {
+            EXTENSIONS.put(extension, type);
+        }
+    }
+
+    /**
+     * 识别文件类型
+     *
+     * @param head   文件头部字节，可以为 null
+     * @param length 有效字节数
+     * @param name   文件名，可以为 null
+     * @return 文件类型，无法识别时为 application/octet-stream
+     */
+    public static String type(byte[] head, int length, String name) {
+        String byName = byName(name);
+        String byMagic = null == head ? null : byMagic(head, Math.min(length, head.length));
+        if (null != byMagic) {
+            /*
+             * html / svg / xml 只使用扩展名
+             */
+            if (MARKUPS.contains(byMagic)) {
+                return null != byName ? byName : TEXT;
+            }
+            /*
+             * zip / ole 容器，扩展名给出更具体的类型时使用扩展名
+             */
+            boolean container = ZIP.equals(byMagic) || OLE.equals(byMagic);
+            if (container && null != byName) {
+                return byName;
+            }
+            return OLE.equals(byMagic) ? OCTET_STREAM : byMagic;
+        }
+        if (null != byName) {
+            return byName;
+        }
+        if (null != head && text(head, Math.min(length, head.length))) {
+            return TEXT;
+        }
+        return OCTET_STREAM;
+    }
+
+    /**
+     * 按扩展名识别
+     *
+     * @param name 文件名
+     * @return 无法识别时为 null
+     */
+    public static String byName(String name) {
+        String extension = FileUtil.extension(name);
+        if (null == extension || extension.isEmpty()) {
+            return null;
+        }
+        return EXTENSIONS.get(extension.toLowerCase(Locale.ROOT));
+    }
+
+    private static String byMagic(byte[] head, int length) {
+        if (length <= 0) {
+            return null;
+        }
+        List<Magic> list = MAGICS[head[0] & 0xFF];
+        if (null != list) {
+            for (Magic magic : list) {
+                if (magic.matches(head, length)) {
+                    return magic.type();
+                }
+            }
+        }
+        for (Magic magic : OTHERS) {
+            if (magic.matches(head, length)) {
+                return magic.type();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 没有控制字符（制表、换行等除外）并且是合法的 UTF-8 时认为是文本
+     */
+    private static boolean text(byte[] head, int length) {
+        if (length == 0) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            int b = head[i] & 0xFF;
+            if (b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f') {
+                return false;
+            }
+        }
+        /*
+         * 头部可能在多字节字符中间截断，忽略末尾最多 3 个字节
+         */
+        int end = length;
+        for (int i = 0; i < 3 && end > 0 && (head[end - 1] & 0xC0) == 0x80; i++) {
+            end--;
+        }
+        if (end > 0 && (head[end - 1] & 0xC0) == 0xC0) {
+            end--;
+        }
+        try {
+            StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(head, 0, end));
+            return true;
+        } catch (CharacterCodingException e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,270 @@
+package run.ice.zero.server.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 进程内近缓存（W-TinyLFU 简化版）
+ * <p>
+ * - 容量按条目数限制，每个条目有过期时间
+ * - 数据保存在 ConcurrentHashMap 中，读取不加锁；淘汰策略（窗口区、主区、频率）由一把锁保护，
+ *   读取时 tryLock 记录访问，锁被占用时丢弃这次记录（只影响淘汰顺序），写入和失效时加锁
+ * - 新条目先进入窗口区（约 1% 容量，LRU），从窗口区淘汰的条目与主区的 LRU 条目比较访问频率，
+ *   频率更高的留在主区，一次性访问的 key 不会挤掉热点
+ * - 访问频率使用 4 行 Count-Min Sketch（4 位计数，最大 15），访问次数达到 10 倍容量时全部减半
+ * - 失效时递增 key 所在分段的代数（按 key 的哈希分为 1024 段），加载前取代数，加载完成后代数不变才写入，
+ *   避免失效与加载并发时写入旧值；不相关的 key 只有在同一分段时才会跳过一次写入
+ *
+ * @author DaoDao
+ */
+public class NearCache<T> {
+
+    private static final int SAMPLE = 10;
+
+    private static final int MAX_COUNT = 15;
+
+    private static final int STRIPES = 1024;
+
+    private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L};
+
+    private record Entry<T>(T value, long expire) {
+    }
+
+    private final long ttl;
+
+    private final int windowMax;
+
+    private final int mainMax;
+
+    private final ConcurrentHashMap<String, Entry<T>> data = new ConcurrentHashMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * 以下由 lock 保护
+     */
+    private final LinkedHashMap<String, Boolean> window = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LinkedHashMap<String, Boolean> main = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final byte[][] sketch;
+
+    private final int mask;
+
+    private int increments;
+
+    /**
+     * 分段代数，只在持有 lock 时递增
+     */
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity 最大条目数，不大于 0 表示不缓存
+     * @param ttl      过期时间（纳秒）
+     */
+    public NearCache(int capacity, long ttl) {
+        this.ttl = ttl;
+        this.windowMax = capacity <= 0 ? 0 : Math.max(1, capacity / 100);
+        this.mainMax = Math.max(capacity - windowMax, 0);
+        int width = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+        this.sketch = new byte[SEEDS.length][width];
+        this.mask = width - 1;
+    }
+
+    /**
+     * 查询，不加锁
+     *
+     * @param key key
+     * @return 未命中或者已过期时返回 null
+     */
+    public T get(String key) {
+        if (windowMax == 0) {
+            return null;
+        }
+        Entry<T> entry = data.get(key);
+        if (null != entry && entry.expire - System.nanoTime() < 0) {
+            lock.lock();
+            try {
+                if (data.remove(key, entry)) {
+                    window.remove(key);
+                    main.remove(key);
+                }
+            } finally {
+                lock.unlock();
+            }
+            entry = null;
+        }
+        if (lock.tryLock()) {
+            try {
+                increment(key);
+                if (null != entry && null == window.get(key)) {
+                    main.get(key);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (null == entry) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * key 当前的代数，加载之前获取，传给 {@link #put(String, Object, long)}
+     *
+     * @param key key
+     * @return 代数
+     */
+    public long generation(String key) {
+        return generations.get(stripe(key));
+    }
+
+    /**
+     * 写入，加载期间 key 发生过失效时不写入
+     *
+     * @param key        key
+     * @param value      value
+     * @param generation 加载之前的代数，见 {@link #generation(String)}
+     */
+    public void put(String key, T value, long generation) {
+        if (windowMax == 0 || null == value) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (generation != generations.get(stripe(key))) {
+                return;
+            }
+            data.put(key, new Entry<>(value, System.nanoTime() + ttl));
+            if (null != main.get(key)) {
+                return;
+            }
+            window.put(key, Boolean.TRUE);
+            if (window.size() <= windowMax) {
+                return;
+            }
+            Iterator<String> it = window.keySet().iterator();
+            String candidate = it.next();
+            it.remove();
+            if (main.size() < mainMax) {
+                main.put(candidate, Boolean.TRUE);
+                return;
+            }
+            evictions.increment();
+            if (mainMax == 0) {
+                data.remove(candidate);
+                return;
+            }
+            Iterator<String> mit = main.keySet().iterator();
+            String victim = mit.next();
+            if (frequency(candidate) > frequency(victim)) {
+                mit.remove();
+                data.remove(victim);
+                main.put(candidate, Boolean.TRUE);
+            } else {
+                data.remove(candidate);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 失效
+     *
+     * @param key key
+     */
+    public void invalidate(String key) {
+        lock.lock();
+        try {
+            generations.incrementAndGet(stripe(key));
+            data.remove(key);
+            window.remove(key);
+            main.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            for (int i = 0; i < STRIPES; i++) {
+                generations.incrementAndGet(i);
+            }
+            data.clear();
+            window.clear();
+            main.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    private static int stripe(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    private void increment(String key) {
+        int h = key.hashCode();
+        for (int i = 0; i < SEEDS.length; i++) {
+            int index = index(h, i);
+            if (sketch[i][index] < MAX_COUNT) {
+                sketch[i][index]++;
+            }
+        }
+        if (++increments >= SAMPLE * (windowMax + mainMax)) {
+            increments = 0;
+            for (byte[] row : sketch) {
+                for (int j = 0; j < row.length; j++) {
+                    row[j] >>= 1;
+                }
+            }
+        }
+    }
+
+    private int frequency(String key) {
+        int h = key.hashCode();
+        int min = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            min = Math.min(min, sketch[i][index(h, i)]);
+        }
+        return min;
+    }
+
+    private int index(int h, int i) {
+        long x = (h + SEEDS[i]) * SEEDS[i];
+        return (int) (x ^ (x >>> 32)) & mask;
+    }
+
+}
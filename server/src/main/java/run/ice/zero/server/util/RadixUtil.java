@@ -1,10 +1,14 @@
 package run.ice.zero.server.util;
 
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 /**
  * 进制转换工具类
+ * <p>
+ * {@link #convert} 支持任意长度和 2 ~ 62 进制；文件 id（不超过 18 位十进制）与 code（62 进制）之间的转换
+ * 使用基于 long 和查找表的 {@link #encode}、{@link #decode}、{@link #matches}，不创建中间对象。
  *
  * @author DaoDao
  */
@@ -20,6 +24,117 @@ public class RadixUtil {
             'y', 'z',
     };
 
+    private static final int BASE = 62;
+
+    /**
+     * long 的 62 进制最多 11 位
+     */
+    private static final int MAX_LENGTH = 11;
+
+    /**
+     * 文件 id 最多 18 位十进制，不会溢出 long
+     */
+    private static final int MAX_DECIMAL = 18;
+
+    /**
+     * 字符 -> 数值，不是 62 进制字符时为 -1
+     */
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < CHARS.length; i++) {
+            VALUES[CHARS[i]] = (byte) i;
+        }
+    }
+
+    /**
+     * 62 进制编码
+     *
+     * @param number 非负整数
+     * @return 62 进制字符串，与 convert(String.valueOf(number), 10, 62) 相同
+     */
+    public static String encode(long number) {
+        if (number < 0) {
+            throw new IllegalArgumentException("negative: " + number);
+        }
+        byte[] bytes = new byte[MAX_LENGTH];
+        int i = MAX_LENGTH;
+        do {
+            bytes[--i] = (byte) CHARS[(int) (number % BASE)];
+            number /= BASE;
+        } while (number > 0);
+        return new String(bytes, i, MAX_LENGTH - i, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * 62 进制解码
+     *
+     * @param string 62 进制字符串
+     * @return 非负整数，字符串无效或者超出 long 范围时为 -1
+     */
+    public static long decode(String string) {
+        if (null == string || string.isEmpty() || string.length() > MAX_LENGTH) {
+            return -1L;
+        }
+        long number = 0L;
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            int v = c < VALUES.length ? VALUES[c] : -1;
+            if (v < 0 || number > (Long.MAX_VALUE - v) / BASE) {
+                return -1L;
+            }
+            number = number * BASE + v;
+        }
+        return number;
+    }
+
+    /**
+     * 校验 code 是否为 id 的 62 进制编码
+     * <p>
+     * 逐位比较并累积差异，耗时只与 code 的长度有关，不会因为前几位匹配而提前返回。
+     *
+     * @param id   十进制 id，最多 18 位
+     * @param code 62 进制 code
+     * @return 是否匹配
+     */
+    public static boolean matches(String id, String code) {
+        long number = decimal(id);
+        if (number < 0 || null == code || code.isEmpty()) {
+            return false;
+        }
+        int digits = 1;
+        for (long n = number / BASE; n > 0; n /= BASE) {
+            digits++;
+        }
+        int diff = digits ^ code.length();
+        for (int i = code.length() - 1; i >= 0; i--) {
+            diff |= code.charAt(i) ^ CHARS[(int) (number % BASE)];
+            number /= BASE;
+        }
+        return diff == 0;
+    }
+
+    /**
+     * 解析十进制 id
+     *
+     * @return 无效时为 -1
+     */
+    private static long decimal(String string) {
+        if (null == string || string.isEmpty() || string.length() > MAX_DECIMAL) {
+            return -1L;
+        }
+        long number = 0L;
+        for (int i = 0; i < string.length(); i++) {
+            int v = string.charAt(i) - '0';
+            if (v < 0 || v > 9) {
+                return -1L;
+            }
+            number = number * 10 + v;
+        }
+        return number;
+    }
+
     /**
      * 进制转换
      *
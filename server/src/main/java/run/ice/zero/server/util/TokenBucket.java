@@ -0,0 +1,89 @@
+package run.ice.zero.server.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 令牌桶限速
+ * <p>
+ * 令牌按固定速率补充，最多积累 burst 个。取令牌时先预留（可以透支），再在锁外等待到透支部分补足，
+ * 多个线程共用时总速率不超过 rate。速率可以在使用中调整，已透支的部分按新速率补足。
+ *
+ * @author DaoDao
+ */
+public class TokenBucket {
+
+    /**
+     * 每秒补充的令牌数
+     */
+    private double rate;
+
+    /**
+     * 最多积累的令牌数
+     */
+    private final double burst;
+
+    private double tokens;
+
+    private long last;
+
+    /**
+     * @param rate  每秒补充的令牌数，不大于 0 表示不限速
+     * @param burst 最多积累的令牌数
+     */
+    public TokenBucket(double rate, double burst) {
+        this.rate = rate;
+        this.burst = Math.max(burst, 1.0);
+        this.tokens = this.burst;
+        this.last = System.nanoTime();
+    }
+
+    /**
+     * 调整速率
+     *
+     * @param rate 每秒补充的令牌数，不大于 0 表示不限速
+     */
+    public synchronized void rate(double rate) {
+        long now = System.nanoTime();
+        if (this.rate > 0) {
+            tokens = Math.min(burst, tokens + (now - last) * this.rate / TimeUnit.SECONDS.toNanos(1L));
+        } else {
+            tokens = burst;
+        }
+        last = now;
+        this.rate = rate;
+    }
+
+    /**
+     * 取令牌，不足时等待
+     *
+     * @param permits 令牌数
+     */
+    public void acquire(long permits) {
+        long wait = reserve(permits);
+        if (wait > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    /**
+     * 预留令牌
+     *
+     * @param permits 令牌数
+     * @return 需要等待的纳秒数
+     */
+    public synchronized long reserve(long permits) {
+        if (rate <= 0 || permits <= 0) {
+            return 0L;
+        }
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - last) * rate / TimeUnit.SECONDS.toNanos(1L));
+        last = now;
+        tokens -= permits;
+        if (tokens >= 0) {
+            return 0L;
+        }
+        return (long) (-tokens / rate * TimeUnit.SECONDS.toNanos(1L));
+    }
+
+}
@@ -0,0 +1,196 @@
+package run.ice.zero.server.helper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+import run.ice.zero.server.config.AppConfig;
+import run.ice.zero.server.constant.CacheConstant;
+import run.ice.zero.server.model.Serializer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Redis 使用 Mockito 模拟，加载函数使用 CountDownLatch 控制完成时间
+ */
+class CacheHelperTest {
+
+    private static final String NAMESPACE = CacheConstant.FILE_INFO;
+
+    private static final String ID = "1";
+
+    private static final String KEY = NAMESPACE + ID;
+
+    private static final Duration TTL = Duration.ofHours(1L);
+
+    record Value(String value) implements Serializer {
+    }
+
+    private final AppConfig appConfig = new AppConfig();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private StringRedisTemplate stringRedisTemplate;
+
+    private ValueOperations<String, String> ops;
+
+    private CacheHelper cacheHelper;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        appConfig.setCacheLocalSize(100);
+        appConfig.setCacheLocalTtl(Duration.ofMinutes(1L));
+        appConfig.setCacheLease(false);
+        appConfig.setCacheLeaseTimeout(Duration.ofSeconds(3L));
+        appConfig.setCacheEarlyRefresh(1.0);
+        appConfig.setCacheTombstoneTtl(Duration.ofMinutes(1L));
+        appConfig.setCacheBloom(false);
+        stringRedisTemplate = Mockito.mock(StringRedisTemplate.class);
+        ops = Mockito.mock(ValueOperations.class);
+        Mockito.when(stringRedisTemplate.opsForValue()).thenReturn(ops);
+        cacheHelper = new CacheHelper();
+        ReflectionTestUtils.setField(cacheHelper, "appConfig", appConfig);
+        ReflectionTestUtils.setField(cacheHelper, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(cacheHelper, "meterRegistry", meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cacheHelper.destroy();
+    }
+
+    /**
+     * L2 的 GET 和 PTTL 结果
+     */
+    @SuppressWarnings("unchecked")
+    private void remote(String json, long pttl) {
+        Mockito.when(stringRedisTemplate.executePipelined(Mockito.any(RedisCallback.class)))
+                .thenReturn(Arrays.asList(json, pttl));
+    }
+
+    private Value get(AtomicInteger loads, CountDownLatch release, String value) {
+        return cacheHelper.get(NAMESPACE, ID, TTL, Value::new, () -> {
+            loads.incrementAndGet();
+            try {
+                Assertions.assertTrue(release.await(5L, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return new Value(value);
+        });
+    }
+
+    private double loads(String result) {
+        return meterRegistry.counter("zero.cache.loads", "namespace", CacheConstant.name(NAMESPACE), "result", result).count();
+    }
+
+    @Test
+    void coalesce() throws InterruptedException {
+        remote(null, -2L);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Value> values = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(Thread.ofVirtual().start(() -> {
+                Value value = get(loads, release, "db");
+                synchronized (values) {
+                    values.add(value);
+                }
+            }));
+        }
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (loads("coalesced") < 7 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5L);
+        }
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertEquals(1, loads.get());
+        Assertions.assertEquals(7.0, loads("coalesced"));
+        Assertions.assertEquals(8, values.size());
+        values.forEach(v -> Assertions.assertEquals("db", v.value()));
+        Mockito.verify(stringRedisTemplate, Mockito.times(1)).executePipelined(Mockito.any(RedisCallback.class));
+        /*
+         * 之后从 L1 读取
+         */
+        Assertions.assertEquals("db", get(loads, release, "db").value());
+        Assertions.assertEquals(1, loads.get());
+    }
+
+    @Test
+    void leaseWait() {
+        appConfig.setCacheLease(true);
+        remote(null, -2L);
+        Mockito.when(ops.setIfAbsent(Mockito.eq(CacheConstant.LEASE + KEY), Mockito.anyString(), Mockito.any(Duration.class))).thenReturn(false);
+        Mockito.when(ops.get(KEY)).thenReturn(null, null, "remote");
+        Mockito.when(stringRedisTemplate.hasKey(CacheConstant.LEASE + KEY)).thenReturn(true);
+        AtomicInteger loads = new AtomicInteger();
+        Value value = get(loads, new CountDownLatch(0), "db");
+        Assertions.assertEquals("remote", value.value());
+        Assertions.assertEquals(0, loads.get());
+        Assertions.assertEquals(1.0, loads("lease-wait"));
+    }
+
+    @Test
+    void leaseRelease() {
+        appConfig.setCacheLease(true);
+        remote(null, -2L);
+        ArgumentCaptor<String> token = ArgumentCaptor.forClass(String.class);
+        Mockito.when(ops.setIfAbsent(Mockito.eq(CacheConstant.LEASE + KEY), token.capture(), Mockito.any(Duration.class))).thenReturn(true);
+        AtomicInteger loads = new AtomicInteger();
+        Value value = get(loads, new CountDownLatch(0), "db");
+        Assertions.assertEquals("db", value.value());
+        Assertions.assertEquals(1, loads.get());
+        Mockito.verify(ops).set(KEY, value.toJson(), TTL);
+        /*
+         * 比较令牌之后删除，不直接 DEL
+         */
+        Mockito.verify(stringRedisTemplate).execute(Mockito.<RedisScript<Long>>any(), Mockito.eq(List.of(CacheConstant.LEASE + KEY)), Mockito.eq(token.getValue()));
+        Mockito.verify(stringRedisTemplate, Mockito.never()).delete(CacheConstant.LEASE + KEY);
+    }
+
+    @Test
+    void earlyRefresh() throws InterruptedException {
+        /*
+         * 剩余 1 秒，小于 L1 过期时间，一定提前刷新
+         */
+        remote("cached", 1000L);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Value value = get(loads, release, "fresh");
+        Assertions.assertEquals("cached", value.value());
+        Assertions.assertEquals(1.0, loads("refresh"));
+        release.countDown();
+        Mockito.verify(ops, Mockito.timeout(5000L)).set(KEY, new Value("fresh").toJson(), TTL);
+        Assertions.assertEquals(1, loads.get());
+    }
+
+    @Test
+    void noEarlyRefresh() {
+        appConfig.setCacheEarlyRefresh(0.0);
+        remote("cached", 1000L);
+        AtomicInteger loads = new AtomicInteger();
+        Value value = get(loads, new CountDownLatch(0), "fresh");
+        Assertions.assertEquals("cached", value.value());
+        Assertions.assertEquals(0.0, loads("refresh"));
+        Assertions.assertEquals(0, loads.get());
+    }
+
+}
@@ -0,0 +1,231 @@
+package run.ice.zero.server.helper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import run.ice.zero.server.config.AppConfig;
+import run.ice.zero.server.store.FileSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * 文件内容从内存输出，不限速
+ */
+class OutputHelperTest {
+
+    private static final String CONTENT = "0123456789";
+
+    private static final String TYPE = "text/plain";
+
+    private static final String ETAG = "\"abc\"";
+
+    private static final long LAST_MODIFIED = 1767225600000L;
+
+    private OutputHelper outputHelper;
+
+    private ThrottleHelper throttleHelper;
+
+    @BeforeEach
+    void setUp() {
+        AppConfig appConfig = new AppConfig();
+        appConfig.setFileZeroCopy(false);
+        appConfig.setFileBufferSize(DataSize.ofBytes(4L));
+        outputHelper = new OutputHelper();
+        ReflectionTestUtils.setField(outputHelper, "appConfig", appConfig);
+        ReflectionTestUtils.setField(outputHelper, "meterRegistry", new SimpleMeterRegistry());
+        throttleHelper = Mockito.mock(ThrottleHelper.class);
+        ReflectionTestUtils.setField(outputHelper, "throttleHelper", throttleHelper);
+    }
+
+    private static String date(long millis) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(millis).atZone(ZoneOffset.UTC));
+    }
+
+    private MockHttpServletResponse output(String range, String ifRange) throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/file");
+        if (null != range) {
+            request.addHeader(HttpHeaders.RANGE, range);
+        }
+        if (null != ifRange) {
+            request.addHeader(HttpHeaders.IF_RANGE, ifRange);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ByteBuffer buffer = ByteBuffer.wrap(CONTENT.getBytes(StandardCharsets.US_ASCII)).asReadOnlyBuffer();
+        FileSource source = new FileSource(null, "key", null, CONTENT.length(), buffer);
+        outputHelper.output(request, response, source, TYPE, ETAG, LAST_MODIFIED);
+        return response;
+    }
+
+    private static void assertFull(MockHttpServletResponse response) throws IOException {
+        Assertions.assertEquals(200, response.getStatus());
+        Assertions.assertNull(response.getHeader(HttpHeaders.CONTENT_RANGE));
+        Assertions.assertEquals(CONTENT, response.getContentAsString());
+    }
+
+    @Test
+    void full() throws IOException {
+        MockHttpServletResponse response = output(null, null);
+        assertFull(response);
+        Assertions.assertEquals("bytes", response.getHeader(HttpHeaders.ACCEPT_RANGES));
+        Assertions.assertEquals(TYPE, response.getContentType());
+        Assertions.assertEquals(CONTENT.length(), response.getContentLength());
+    }
+
+    @Test
+    void single() throws IOException {
+        MockHttpServletResponse response = output("bytes=2-5", null);
+        Assertions.assertEquals(206, response.getStatus());
+        Assertions.assertEquals("bytes 2-5/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        Assertions.assertEquals(4, response.getContentLength());
+        Assertions.assertEquals("2345", response.getContentAsString());
+
+        response = output("bytes=-3", null);
+        Assertions.assertEquals("bytes 7-9/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        Assertions.assertEquals("789", response.getContentAsString());
+
+        response = output("bytes=8-", null);
+        Assertions.assertEquals("bytes 8-9/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        Assertions.assertEquals("89", response.getContentAsString());
+
+        /*
+         * 结束位置超出文件长度时截断
+         */
+        response = output("bytes=6-100", null);
+        Assertions.assertEquals("bytes 6-9/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        Assertions.assertEquals("6789", response.getContentAsString());
+    }
+
+    @Test
+    void multipart() throws IOException {
+        MockHttpServletResponse response = output("bytes=0-1, 5-6", null);
+        Assertions.assertEquals(206, response.getStatus());
+        String contentType = response.getContentType();
+        Assertions.assertNotNull(contentType);
+        Assertions.assertTrue(contentType.startsWith("multipart/byteranges; boundary="));
+        String boundary = contentType.substring(contentType.indexOf('=') + 1);
+        String expected = "\r\n--" + boundary + "\r\n"
+                + "Content-Type: " + TYPE + "\r\n"
+                + "Content-Range: bytes 0-1/10\r\n"
+                + "\r\n"
+                + "01"
+                + "\r\n--" + boundary + "\r\n"
+                + "Content-Type: " + TYPE + "\r\n"
+                + "Content-Range: bytes 5-6/10\r\n"
+                + "\r\n"
+                + "56"
+                + "\r\n--" + boundary + "--\r\n";
+        Assertions.assertEquals(expected, response.getContentAsString());
+        /*
+         * 限速按实际输出的字节数计算，不是整个文件
+         */
+        Mockito.verify(throttleHelper).open(Mockito.any(), Mockito.eq(4L));
+    }
+
+    @Test
+    void unsatisfiable() throws IOException {
+        MockHttpServletResponse response = output("bytes=10-", null);
+        Assertions.assertEquals(416, response.getStatus());
+        Assertions.assertEquals("bytes */10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        Assertions.assertEquals("", response.getContentAsString());
+        /*
+         * 只要有一个区间可满足就输出
+         */
+        response = output("bytes=20-30, 1-2", null);
+        Assertions.assertEquals(206, response.getStatus());
+        Assertions.assertEquals("bytes 1-2/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void ignored() throws IOException {
+        assertFull(output("bytes=5-2", null));
+        assertFull(output("items=0-1", null));
+        /*
+         * 重叠区间的总长度超过文件长度
+         */
+        assertFull(output("bytes=0-8, 1-9", null));
+    }
+
+    @Test
+    void ifRange() throws IOException {
+        Assertions.assertEquals(206, output("bytes=0-1", ETAG).getStatus());
+        Assertions.assertEquals(206, output("bytes=0-1", date(LAST_MODIFIED)).getStatus());
+        /*
+         * 实体标签使用强比较，日期必须完全一致，不匹配时输出整个文件
+         */
+        assertFull(output("bytes=0-1", "\"other\""));
+        assertFull(output("bytes=0-1", "W/" + ETAG));
+        assertFull(output("bytes=0-1", date(LAST_MODIFIED + 1000L)));
+        assertFull(output("bytes=0-1", date(LAST_MODIFIED - 1000L)));
+        assertFull(output("bytes=0-1", "yesterday"));
+    }
+
+    private MockHttpServletResponse notModified(String method, String ifNoneMatch, String ifModifiedSince, long lastModified, boolean expected) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, "/file");
+        if (null != ifNoneMatch) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        if (null != ifModifiedSince) {
+            request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, ifModifiedSince);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        Assertions.assertEquals(expected, outputHelper.notModified(request, response, ETAG, lastModified));
+        Assertions.assertEquals(expected ? 304 : 200, response.getStatus());
+        return response;
+    }
+
+    @Test
+    void ifNoneMatch() {
+        MockHttpServletResponse response = notModified("GET", ETAG, null, LAST_MODIFIED, true);
+        Assertions.assertEquals(ETAG, response.getHeader(HttpHeaders.ETAG));
+        Assertions.assertEquals(LAST_MODIFIED, response.getDateHeader(HttpHeaders.LAST_MODIFIED));
+        /*
+         * 弱比较、多个标签、*
+         */
+        notModified("HEAD", "W/" + ETAG, null, LAST_MODIFIED, true);
+        notModified("GET", "\"x\", " + ETAG, null, LAST_MODIFIED, true);
+        notModified("GET", "*", null, LAST_MODIFIED, true);
+        notModified("GET", "\"x\"", null, LAST_MODIFIED, false);
+        /*
+         * 有 If-None-Match 时忽略 If-Modified-Since
+         */
+        notModified("GET", "\"x\"", date(LAST_MODIFIED), LAST_MODIFIED, false);
+    }
+
+    @Test
+    void ifModifiedSince() {
+        notModified("GET", null, date(LAST_MODIFIED), LAST_MODIFIED, true);
+        notModified("GET", null, date(LAST_MODIFIED + 1000L), LAST_MODIFIED, true);
+        /*
+         * 按秒比较，毫秒部分不影响结果
+         */
+        notModified("GET", null, date(LAST_MODIFIED), LAST_MODIFIED + 999L, true);
+        notModified("GET", null, date(LAST_MODIFIED - 1000L), LAST_MODIFIED, false);
+        notModified("GET", null, "yesterday", LAST_MODIFIED, false);
+        /*
+         * 最后修改时间未知
+         */
+        MockHttpServletResponse response = notModified("GET", ETAG, null, -1L, true);
+        Assertions.assertNull(response.getHeader(HttpHeaders.LAST_MODIFIED));
+        notModified("GET", null, date(LAST_MODIFIED), -1L, false);
+        notModified("GET", null, null, LAST_MODIFIED, false);
+    }
+
+    @Test
+    void unsafe() {
+        notModified("POST", ETAG, null, LAST_MODIFIED, false);
+        notModified("PUT", null, date(LAST_MODIFIED), LAST_MODIFIED, false);
+    }
+
+}
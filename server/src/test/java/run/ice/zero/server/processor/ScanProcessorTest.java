@@ -0,0 +1,29 @@
+package run.ice.zero.server.processor;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+class ScanProcessorTest {
+
+    private static final byte[] SIGNATURE = "EICAR".getBytes(StandardCharsets.US_ASCII);
+
+    private static boolean contains(String data, int bufferSize) throws IOException {
+        return ScanProcessor.contains(new ByteArrayInputStream(data.getBytes(StandardCharsets.US_ASCII)), SIGNATURE, bufferSize);
+    }
+
+    @Test
+    void contains() throws IOException {
+        Assertions.assertTrue(contains("EICAR", 8));
+        Assertions.assertTrue(contains("0123456789EICAR0123456789", 8));
+        Assertions.assertFalse(contains("0123456789EICA0123456789", 8));
+        Assertions.assertFalse(contains("", 8));
+        for (int i = 0; i < 16; i++) {
+            Assertions.assertTrue(contains("x".repeat(i) + "EICAR" + "y".repeat(i), 5), "offset " + i);
+        }
+    }
+
+}
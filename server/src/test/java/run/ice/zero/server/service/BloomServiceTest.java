@@ -0,0 +1,134 @@
+package run.ice.zero.server.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import run.ice.zero.server.config.AppConfig;
+import run.ice.zero.server.constant.CacheConstant;
+import run.ice.zero.server.helper.CacheHelper;
+import run.ice.zero.server.repository.FileInfoRepository;
+import run.ice.zero.server.repository.UserRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 数据库使用内存中的记录模拟，只返回已提交的记录
+ */
+class BloomServiceTest {
+
+    private record Row<T>(T id, LocalDateTime createTime) {
+    }
+
+    private final AppConfig appConfig = new AppConfig();
+
+    private final List<Row<String>> files = new ArrayList<>();
+
+    private final List<Row<Long>> users = new ArrayList<>();
+
+    private CacheHelper cacheHelper;
+
+    private BloomService bloomService;
+
+    @BeforeEach
+    void setUp() {
+        appConfig.setCacheLocalSize(100);
+        appConfig.setCacheLocalTtl(Duration.ofMinutes(1L));
+        appConfig.setCacheBloom(true);
+        appConfig.setCacheBloomExpected(100000L);
+        appConfig.setCacheBloomFpp(0.001);
+        appConfig.setCacheBloomOverlap(Duration.ofMinutes(5L));
+        cacheHelper = new CacheHelper();
+        ReflectionTestUtils.setField(cacheHelper, "appConfig", appConfig);
+        ReflectionTestUtils.setField(cacheHelper, "stringRedisTemplate", Mockito.mock(StringRedisTemplate.class));
+        ReflectionTestUtils.setField(cacheHelper, "meterRegistry", new SimpleMeterRegistry());
+        FileInfoRepository fileInfoRepository = Mockito.mock(FileInfoRepository.class);
+        Mockito.when(fileInfoRepository.idsSince(Mockito.any(), Mockito.anyString(), Mockito.any())).thenAnswer(invocation ->
+                select(files, invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2)));
+        UserRepository userRepository = Mockito.mock(UserRepository.class);
+        Mockito.when(userRepository.idsSince(Mockito.any(), Mockito.anyLong(), Mockito.any())).thenAnswer(invocation ->
+                select(users, invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2)));
+        bloomService = new BloomService();
+        ReflectionTestUtils.setField(bloomService, "appConfig", appConfig);
+        ReflectionTestUtils.setField(bloomService, "cacheHelper", cacheHelper);
+        ReflectionTestUtils.setField(bloomService, "fileInfoRepository", fileInfoRepository);
+        ReflectionTestUtils.setField(bloomService, "userRepository", userRepository);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cacheHelper.destroy();
+    }
+
+    /**
+     * WHERE create_time >= :since AND id > :after ORDER BY id LIMIT :size
+     */
+    private static <T extends Comparable<T>> List<T> select(List<Row<T>> rows, LocalDateTime since, T after, Pageable pageable) {
+        return rows.stream()
+                .filter(row -> !row.createTime().isBefore(since) && row.id().compareTo(after) > 0)
+                .map(Row::id)
+                .sorted()
+                .limit(pageable.getPageSize())
+                .toList();
+    }
+
+    @Test
+    void lateCommit() {
+        LocalDateTime now = LocalDateTime.now();
+        files.add(new Row<>("100", now.minusDays(1L)));
+        files.add(new Row<>("300", now.minusSeconds(1L)));
+        bloomService.scan();
+        Assertions.assertTrue(cacheHelper.known(CacheConstant.FILE_INFO, "100"));
+        Assertions.assertTrue(cacheHelper.known(CacheConstant.FILE_INFO, "300"));
+        /*
+         * id 小于已经读到的最大 id，创建时间在上次读取开始之前，提交时间在之后
+         */
+        files.add(new Row<>("200", now.minusSeconds(2L)));
+        bloomService.scan();
+        Assertions.assertTrue(cacheHelper.known(CacheConstant.FILE_INFO, "200"));
+        Assertions.assertFalse(cacheHelper.known(CacheConstant.FILE_INFO, "150"));
+    }
+
+    @Test
+    void lateCommitUser() {
+        LocalDateTime now = LocalDateTime.now();
+        users.add(new Row<>(1L, now.minusDays(1L)));
+        users.add(new Row<>(3L, now.minusSeconds(1L)));
+        bloomService.scan();
+        users.add(new Row<>(2L, now.minusSeconds(2L)));
+        bloomService.scan();
+        Assertions.assertTrue(cacheHelper.known(CacheConstant.USER, "1"));
+        Assertions.assertTrue(cacheHelper.known(CacheConstant.USER, "2"));
+        Assertions.assertTrue(cacheHelper.known(CacheConstant.USER, "3"));
+        Assertions.assertFalse(cacheHelper.known(CacheConstant.USER, "4"));
+    }
+
+    @Test
+    void pages() {
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < 2500; i++) {
+            files.add(new Row<>(String.format("%05d", i), now.minusDays(1L)));
+        }
+        bloomService.scan();
+        for (int i = 0; i < 2500; i++) {
+            Assertions.assertTrue(cacheHelper.known(CacheConstant.FILE_INFO, String.format("%05d", i)));
+        }
+        /*
+         * 之后只读取重叠窗口内创建的记录
+         */
+        files.add(new Row<>("00000a", now.minusDays(1L)));
+        files.add(new Row<>("00000b", now));
+        bloomService.scan();
+        Assertions.assertTrue(cacheHelper.known(CacheConstant.FILE_INFO, "00000b"));
+        Assertions.assertFalse(cacheHelper.known(CacheConstant.FILE_INFO, "00000a"));
+    }
+
+}
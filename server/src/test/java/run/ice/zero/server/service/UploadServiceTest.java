@@ -0,0 +1,247 @@
+package run.ice.zero.server.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import run.ice.zero.server.config.AppConfig;
+import run.ice.zero.server.constant.CacheConstant;
+import run.ice.zero.server.error.AppException;
+import run.ice.zero.server.error.ServerError;
+import run.ice.zero.server.model.file.FileData;
+import run.ice.zero.server.model.file.UploadData;
+import run.ice.zero.server.model.file.UploadInit;
+import run.ice.zero.server.model.file.UploadParam;
+import run.ice.zero.server.model.file.UploadPart;
+import run.ice.zero.server.store.FileStore;
+import run.ice.zero.server.util.FileUtil;
+import run.ice.zero.server.util.IdGenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Redis hash 使用内存中的 Map 模拟，暂存文件写入临时目录
+ */
+class UploadServiceTest {
+
+    private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    private File tmp;
+
+    private final Map<String, Map<String, String>> hashes = new ConcurrentHashMap<>();
+
+    private final FileData fileData = new FileData();
+
+    private byte[] completed;
+
+    private long completedId;
+
+    private FileService fileService;
+
+    private UploadService uploadService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        AppConfig appConfig = new AppConfig();
+        appConfig.setFilePartSize(DataSize.ofBytes(4L));
+        appConfig.setFileBufferSize(DataSize.ofBytes(3L));
+        appConfig.setFileUploadExpire(Duration.ofHours(1L));
+
+        StringRedisTemplate stringRedisTemplate = Mockito.mock(StringRedisTemplate.class);
+        HashOperations<String, String, String> ops = Mockito.mock(HashOperations.class);
+        Mockito.when(stringRedisTemplate.<String, String>opsForHash()).thenReturn(ops);
+        Mockito.when(stringRedisTemplate.delete(Mockito.anyString())).thenAnswer(invocation -> null != hashes.remove(invocation.<String>getArgument(0)));
+        Mockito.doAnswer(invocation -> {
+            hash(invocation.getArgument(0)).putAll(invocation.getArgument(1));
+            return null;
+        }).when(ops).putAll(Mockito.anyString(), Mockito.anyMap());
+        Mockito.doAnswer(invocation -> {
+            hash(invocation.getArgument(0)).put(invocation.getArgument(1), invocation.getArgument(2));
+            return null;
+        }).when(ops).put(Mockito.anyString(), Mockito.anyString(), Mockito.anyString());
+        Mockito.when(ops.putIfAbsent(Mockito.anyString(), Mockito.anyString(), Mockito.anyString())).thenAnswer(invocation ->
+                null == hash(invocation.getArgument(0)).putIfAbsent(invocation.getArgument(1), invocation.getArgument(2)));
+        Mockito.when(ops.get(Mockito.anyString(), Mockito.anyString())).thenAnswer(invocation ->
+                hash(invocation.getArgument(0)).get(invocation.<String>getArgument(1)));
+        Mockito.when(ops.multiGet(Mockito.anyString(), Mockito.anyCollection())).thenAnswer(invocation -> {
+            Map<String, String> hash = hash(invocation.getArgument(0));
+            return invocation.<Collection<String>>getArgument(1).stream().map(hash::get).toList();
+        });
+        Mockito.when(ops.entries(Mockito.anyString())).thenAnswer(invocation -> new HashMap<>(hash(invocation.getArgument(0))));
+        Mockito.when(ops.increment(Mockito.anyString(), Mockito.anyString(), Mockito.anyLong())).thenAnswer(invocation ->
+                Long.valueOf(hash(invocation.getArgument(0)).merge(invocation.getArgument(1), String.valueOf(invocation.<Long>getArgument(2)),
+                        (a, b) -> String.valueOf(Long.parseLong(a) + Long.parseLong(b)))));
+        Mockito.when(ops.delete(Mockito.anyString(), Mockito.any())).thenAnswer(invocation -> {
+            Map<String, String> hash = hash(invocation.getArgument(0));
+            Object[] fields = invocation.getArguments();
+            long n = 0L;
+            for (int i = 1; i < fields.length; i++) {
+                n += null == hash.remove(String.valueOf(fields[i])) ? 0L : 1L;
+            }
+            return n;
+        });
+
+        FileStore store = Mockito.mock(FileStore.class);
+        Mockito.when(store.name()).thenReturn("local");
+        fileService = Mockito.mock(FileService.class);
+        Mockito.when(fileService.target(Mockito.anyString())).thenReturn(store);
+        Mockito.when(fileService.fileStore(Mockito.any())).thenReturn(store);
+        Mockito.when(fileService.part(Mockito.any(), Mockito.anyString())).thenAnswer(invocation ->
+                new File(tmp, invocation.getArgument(1) + FileUtil.PART_SUFFIX));
+        Mockito.when(fileService.upload(Mockito.anyLong(), Mockito.any(File.class), Mockito.any(), Mockito.anyString(), Mockito.anyString(), Mockito.anyLong(), Mockito.isNull()))
+                .thenAnswer(invocation -> {
+                    completedId = invocation.getArgument(0);
+                    completed = Files.readAllBytes(invocation.<File>getArgument(1).toPath());
+                    return fileData;
+                });
+
+        uploadService = new UploadService();
+        ReflectionTestUtils.setField(uploadService, "appConfig", appConfig);
+        ReflectionTestUtils.setField(uploadService, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(uploadService, "fileService", fileService);
+        ReflectionTestUtils.setField(uploadService, "idGenerator", new IdGenerator(0));
+
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("user", null));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    private Map<String, String> hash(String key) {
+        return hashes.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+    }
+
+    private UploadData init() {
+        UploadInit param = new UploadInit();
+        param.setOrigin("a.txt");
+        param.setSize((long) CONTENT.length);
+        return uploadService.init(param);
+    }
+
+    private UploadPart part(UploadData data, int number, String sha256) {
+        int from = (number - 1) * 4;
+        byte[] bytes = Arrays.copyOfRange(CONTENT, from, Math.min(from + 4, CONTENT.length));
+        return uploadService.part(data.getUploadId(), number, sha256, new ByteArrayInputStream(bytes));
+    }
+
+    private static UploadParam param(UploadData data) {
+        UploadParam param = new UploadParam();
+        param.setUploadId(data.getUploadId());
+        return param;
+    }
+
+    private static String sha256(String value) {
+        return HexFormat.of().formatHex(FileUtil.sha256().digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String code(Runnable runnable) {
+        return Assertions.assertThrows(AppException.class, runnable::run).getCode();
+    }
+
+    @Test
+    void complete() {
+        UploadData data = init();
+        Assertions.assertEquals(3, data.getPartCount());
+        Assertions.assertEquals(CONTENT.length, new File(tmp, data.getUploadId() + FileUtil.PART_SUFFIX).length());
+        /*
+         * 乱序、重复上传
+         */
+        part(data, 3, null);
+        part(data, 1, null);
+        part(data, 1, null);
+        Assertions.assertEquals(ServerError.UPLOAD_INCOMPLETE.code, code(() -> uploadService.complete(param(data))));
+        UploadPart uploadPart = part(data, 2, null);
+        Assertions.assertEquals(4L, uploadPart.getSize());
+        Assertions.assertEquals(sha256("4567"), uploadPart.getSha256());
+
+        List<UploadPart> parts = uploadService.status(param(data)).getParts();
+        Assertions.assertEquals(List.of(1, 2, 3), parts.stream().map(UploadPart::getNumber).toList());
+        Assertions.assertEquals(2L, parts.getLast().getSize());
+
+        Assertions.assertSame(fileData, uploadService.complete(param(data)));
+        Assertions.assertArrayEquals(CONTENT, completed);
+        /*
+         * 完成时使用创建会话时分配的 id，与选择存储时使用的 id 相同
+         */
+        Mockito.verify(fileService).target(String.valueOf(completedId));
+        Assertions.assertFalse(hashes.containsKey(CacheConstant.FILE_UPLOAD + data.getUploadId()));
+        Assertions.assertEquals(ServerError.UPLOAD_NOT_EXIST.code, code(() -> uploadService.complete(param(data))));
+    }
+
+    @Test
+    void failedRetry() {
+        UploadData data = init();
+        part(data, 1, null);
+        part(data, 2, null);
+        part(data, 3, null);
+        /*
+         * 重复上传失败之后，暂存文件中的数据已经改变，之前的分片记录不能保留
+         */
+        Assertions.assertEquals(ServerError.UPLOAD_PART_ERROR.code, code(() -> part(data, 2, "00")));
+        Assertions.assertEquals(List.of(1, 3), uploadService.status(param(data)).getParts().stream().map(UploadPart::getNumber).toList());
+        Assertions.assertEquals(ServerError.UPLOAD_INCOMPLETE.code, code(() -> uploadService.complete(param(data))));
+        Assertions.assertEquals(ServerError.UPLOAD_PART_ERROR.code, code(() ->
+                uploadService.part(data.getUploadId(), 3, null, new ByteArrayInputStream("89xx".getBytes(StandardCharsets.UTF_8)))));
+        Assertions.assertEquals(List.of(1), uploadService.status(param(data)).getParts().stream().map(UploadPart::getNumber).toList());
+        part(data, 2, null);
+        part(data, 3, null);
+        uploadService.complete(param(data));
+        Assertions.assertArrayEquals(CONTENT, completed);
+    }
+
+    @Test
+    void completeWhileWriting() {
+        UploadData data = init();
+        part(data, 1, null);
+        part(data, 2, null);
+        part(data, 3, null);
+        Map<String, String> hash = hash(CacheConstant.FILE_UPLOAD + data.getUploadId());
+        Assertions.assertEquals("0", hash.get("writing"));
+        hash.put("writing", "1");
+        Assertions.assertEquals(ServerError.UPLOAD_BUSY.code, code(() -> uploadService.complete(param(data))));
+        Assertions.assertNull(hash.get("completing"));
+        hash.put("writing", "0");
+        uploadService.complete(param(data));
+        Assertions.assertArrayEquals(CONTENT, completed);
+    }
+
+    @Test
+    void partWhileCompleting() {
+        UploadData data = init();
+        part(data, 1, null);
+        Map<String, String> hash = hash(CacheConstant.FILE_UPLOAD + data.getUploadId());
+        hash.put("completing", "1");
+        Assertions.assertEquals(ServerError.UPLOAD_BUSY.code, code(() -> part(data, 2, null)));
+        Assertions.assertEquals("0", hash.get("writing"));
+        /*
+         * 同时只能有一个完成请求
+         */
+        Assertions.assertEquals(ServerError.UPLOAD_BUSY.code, code(() -> uploadService.complete(param(data))));
+        Assertions.assertEquals("1", hash.get("completing"));
+        Assertions.assertEquals(List.of(1), uploadService.status(param(data)).getParts().stream().map(UploadPart::getNumber).toList());
+    }
+
+}
@@ -0,0 +1,68 @@
+package run.ice.zero.server.store;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import run.ice.zero.server.config.DiskConfig;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+class DiskRouterTest {
+
+    @TempDir
+    private Path dir;
+
+    private DiskRouter router(int... weights) {
+        DiskConfig config = new DiskConfig();
+        for (int i = 0; i < weights.length; i++) {
+            DiskConfig.Root root = new DiskConfig.Root();
+            root.setName("d" + i);
+            root.setPath(dir.resolve("d" + i).toString());
+            root.setWeight(weights[i]);
+            config.getRoots().add(root);
+        }
+        DiskRouter router = new DiskRouter(config, new SimpleMeterRegistry());
+        router.check(0L);
+        return router;
+    }
+
+    @Test
+    void weight() {
+        DiskRouter router = router(1, 3);
+        Map<String, Integer> count = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            count.merge(router.select(String.valueOf(100000000000000000L + i)).name(), 1, Integer::sum);
+        }
+        double ratio = count.get("disk-d1") / (double) count.get("disk-d0");
+        Assertions.assertTrue(ratio > 2.5 && ratio < 3.5, "ratio " + ratio);
+    }
+
+    @Test
+    void add() {
+        DiskRouter before = router(1, 1);
+        DiskRouter after = router(1, 1, 1);
+        int moved = 0;
+        for (int i = 0; i < 20000; i++) {
+            String id = String.valueOf(100000000000000000L + i);
+            String a = before.select(id).name();
+            String b = after.select(id).name();
+            if (!a.equals(b)) {
+                Assertions.assertEquals("disk-d2", b);
+                moved++;
+            }
+        }
+        Assertions.assertTrue(moved > 20000 / 3 * 0.8 && moved < 20000 / 3 * 1.2, "moved " + moved);
+    }
+
+    @Test
+    void readOnly() {
+        DiskRouter router = router(1, 1);
+        router.check(Long.MAX_VALUE);
+        Assertions.assertNull(router.select("1"));
+        Assertions.assertNotNull(router.get("disk-d0"));
+    }
+
+}
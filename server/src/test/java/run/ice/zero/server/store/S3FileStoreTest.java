@@ -0,0 +1,139 @@
+package run.ice.zero.server.store;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import run.ice.zero.server.config.S3Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 使用进程内 HTTP 服务模拟 S3 兼容存储（PUT / GET Range / HEAD / DELETE）
+ */
+@Slf4j
+class S3FileStoreTest {
+
+    private static final Pattern RANGE = Pattern.compile("^bytes=(\\d+)-(\\d+)$");
+
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+
+    private HttpServer server;
+
+    private S3FileStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        S3Config config = new S3Config();
+        config.setEndpoint("http://127.0.0.1:" + server.getAddress().getPort());
+        config.setBucket("zero");
+        config.setAccessKey("minio");
+        config.setSecretKey("minio123");
+        store = new S3FileStore(config, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getRawPath();
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (null == authorization || !authorization.startsWith("AWS4-HMAC-SHA256 Credential=minio/")) {
+            exchange.sendResponseHeaders(403, -1);
+            exchange.close();
+            return;
+        }
+        byte[] object = objects.get(path);
+        switch (exchange.getRequestMethod()) {
+            case "PUT" -> {
+                try (InputStream is = exchange.getRequestBody()) {
+                    objects.put(path, is.readAllBytes());
+                }
+                exchange.sendResponseHeaders(200, -1);
+            }
+            case "DELETE" -> {
+                objects.remove(path);
+                exchange.sendResponseHeaders(204, -1);
+            }
+            case "HEAD" -> {
+                if (null == object) {
+                    exchange.sendResponseHeaders(404, -1);
+                } else {
+                    exchange.getResponseHeaders().set("Content-Length", String.valueOf(object.length));
+                    exchange.sendResponseHeaders(200, -1);
+                }
+            }
+            case "GET" -> {
+                if (null == object) {
+                    exchange.sendResponseHeaders(404, -1);
+                    break;
+                }
+                Matcher matcher = RANGE.matcher(String.valueOf(exchange.getRequestHeaders().getFirst("Range")));
+                byte[] body = object;
+                int status = 200;
+                if (matcher.matches()) {
+                    int start = Integer.parseInt(matcher.group(1));
+                    int end = Math.min(Integer.parseInt(matcher.group(2)), object.length - 1);
+                    body = Arrays.copyOfRange(object, start, end + 1);
+                    status = 206;
+                }
+                exchange.sendResponseHeaders(status, body.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                }
+            }
+            default -> exchange.sendResponseHeaders(405, -1);
+        }
+        exchange.close();
+    }
+
+    @Test
+    void testPutGetDelete() throws IOException {
+        String key = "2020/02/20/测试 file.txt";
+        byte[] data = "hello, zero tiny!".getBytes(StandardCharsets.UTF_8);
+        store.put(key, new ByteArrayInputStream(data), data.length);
+
+        FileStat stat = store.stat(key);
+        Assertions.assertNotNull(stat);
+        Assertions.assertEquals(data.length, stat.getSize());
+
+        try (InputStream is = store.get(key, 0L, data.length)) {
+            Assertions.assertArrayEquals(data, is.readAllBytes());
+        }
+        try (InputStream is = store.get(key, 7L, 4L)) {
+            Assertions.assertEquals("zero", new String(is.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        Assertions.assertNull(store.region(key));
+
+        Assertions.assertTrue(store.delete(key));
+        Assertions.assertNull(store.stat(key));
+        Assertions.assertThrows(NoSuchFileException.class, () -> store.get(key, 0L, 1L));
+    }
+
+    @Test
+    void testEncode() {
+        Assertions.assertEquals("2020/02/20/a%20b~.txt", S3FileStore.encode("2020/02/20/a b~.txt"));
+        Assertions.assertEquals("%E4%B8%AD", S3FileStore.encode("中"));
+    }
+
+}
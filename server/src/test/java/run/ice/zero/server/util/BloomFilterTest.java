@@ -0,0 +1,26 @@
+package run.ice.zero.server.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class BloomFilterTest {
+
+    @Test
+    void mightContain() {
+        BloomFilter bloom = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            bloom.add("id-" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            Assertions.assertTrue(bloom.mightContain("id-" + i));
+        }
+        int positives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (bloom.mightContain("other-" + i)) {
+                positives++;
+            }
+        }
+        Assertions.assertTrue(positives < 300, "false positives " + positives);
+    }
+
+}
@@ -0,0 +1,42 @@
+package run.ice.zero.server.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+class IdGeneratorTest {
+
+    @Test
+    void next() {
+        IdGenerator generator = new IdGenerator(IdGenerator.MAX_NODE);
+        long last = 0L;
+        for (int i = 0; i < 10_000; i++) {
+            long id = generator.next();
+            Assertions.assertTrue(id > last);
+            Assertions.assertEquals(18, String.valueOf(id).length());
+            last = id;
+        }
+        Assertions.assertTrue(Duration.between(IdGenerator.time(last), Instant.now()).abs().toSeconds() < 60);
+    }
+
+    @Test
+    void batch() {
+        IdGenerator generator = new IdGenerator(1);
+        long[] ids = generator.next(3000);
+        for (int i = 1; i < ids.length; i++) {
+            Assertions.assertTrue(ids[i] > ids[i - 1]);
+        }
+        Assertions.assertTrue(generator.next() > ids[ids.length - 1]);
+    }
+
+    @Test
+    void node() {
+        long a = new IdGenerator(1).next();
+        long b = new IdGenerator(2).next();
+        Assertions.assertNotEquals(a, b);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new IdGenerator(IdGenerator.MAX_NODE + 1));
+    }
+
+}
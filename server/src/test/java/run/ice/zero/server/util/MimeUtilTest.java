@@ -0,0 +1,62 @@
+package run.ice.zero.server.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+class MimeUtilTest {
+
+    private static String type(String hex, String name) {
+        String[] parts = hex.split(" ");
+        byte[] head = new byte[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            head[i] = (byte) Integer.parseInt(parts[i], 16);
+        }
+        return MimeUtil.type(head, head.length, name);
+    }
+
+    @Test
+    void magic() {
+        Assertions.assertEquals("image/png", type("89 50 4E 47 0D 0A 1A 0A 00 00", "a.jpg"));
+        Assertions.assertEquals("image/jpeg", type("FF D8 FF E0 00 10", null));
+        Assertions.assertEquals("image/webp", type("52 49 46 46 10 00 00 00 57 45 42 50 56 50", "a"));
+        Assertions.assertEquals("video/mp4", type("00 00 00 20 66 74 79 70 69 73 6F 6D", "a.bin"));
+        Assertions.assertEquals("application/pdf", type("25 50 44 46 2D 31 2E 37", null));
+    }
+
+    @Test
+    void container() {
+        Assertions.assertEquals("application/zip", type("50 4B 03 04 14 00", "a.zip"));
+        Assertions.assertEquals("application/vnd.openxmlformats-officedocument.wordprocessingml.document", type("50 4B 03 04 14 00", "a.DOCX"));
+        Assertions.assertEquals("application/msword", type("D0 CF 11 E0 A1 B1 1A E1", "a.doc"));
+        Assertions.assertEquals("application/octet-stream", type("D0 CF 11 E0 A1 B1 1A E1", null));
+    }
+
+    @Test
+    void markup() {
+        byte[] html = "<html><script>alert(1)</script></html>".getBytes(StandardCharsets.UTF_8);
+        Assertions.assertEquals("image/png", MimeUtil.type(html, html.length, "a.png"));
+        Assertions.assertEquals("text/plain", MimeUtil.type(html, html.length, null));
+        Assertions.assertEquals("text/html", MimeUtil.type(html, html.length, "a.html"));
+        byte[] svg = "<svg onload=\"alert(1)\"/>".getBytes(StandardCharsets.UTF_8);
+        Assertions.assertEquals("image/jpeg", MimeUtil.type(svg, svg.length, "a.jpg"));
+        Assertions.assertEquals("image/svg+xml", MimeUtil.type(svg, svg.length, "a.svg"));
+        byte[] xml = "<?xml version=\"1.0\"?>".getBytes(StandardCharsets.UTF_8);
+        Assertions.assertEquals("text/plain", MimeUtil.type(xml, xml.length, "a"));
+        /*
+         * 二进制魔数仍然优先于扩展名
+         */
+        Assertions.assertEquals("image/png", type("89 50 4E 47 0D 0A 1A 0A 00 00", "a.html"));
+    }
+
+    @Test
+    void fallback() {
+        byte[] json = "{\"a\": \"中文\"}".getBytes(StandardCharsets.UTF_8);
+        Assertions.assertEquals("application/json", MimeUtil.type(json, json.length, "a.json"));
+        Assertions.assertEquals("text/plain", MimeUtil.type(json, json.length, null));
+        Assertions.assertEquals("application/octet-stream", type("00 01 02 03", null));
+        Assertions.assertEquals("application/octet-stream", MimeUtil.type(null, 0, null));
+    }
+
+}
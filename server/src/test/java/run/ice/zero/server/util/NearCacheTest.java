@@ -0,0 +1,98 @@
+package run.ice.zero.server.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+class NearCacheTest {
+
+    @Test
+    void get() {
+        NearCache<String> cache = new NearCache<>(100, TimeUnit.MINUTES.toNanos(1L));
+        Assertions.assertNull(cache.get("a"));
+        cache.put("a", "1", cache.generation("a"));
+        Assertions.assertEquals("1", cache.get("a"));
+        cache.invalidate("a");
+        Assertions.assertNull(cache.get("a"));
+        Assertions.assertEquals(1, cache.hits());
+        Assertions.assertEquals(2, cache.misses());
+    }
+
+    @Test
+    void generation() {
+        NearCache<String> cache = new NearCache<>(100, TimeUnit.MINUTES.toNanos(1L));
+        long generation = cache.generation("a");
+        cache.invalidate("a");
+        cache.put("a", "old", generation);
+        Assertions.assertNull(cache.get("a"));
+        /*
+         * 其它 key 的失效不影响写入
+         */
+        long b = cache.generation("b");
+        cache.invalidate("a");
+        cache.put("b", "1", b);
+        Assertions.assertEquals("1", cache.get("b"));
+    }
+
+    @Test
+    void concurrent() throws InterruptedException {
+        NearCache<String> cache = new NearCache<>(1000, TimeUnit.MINUTES.toNanos(1L));
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            int n = t;
+            threads[t] = Thread.ofVirtual().start(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    String key = "k-" + (i % 2000);
+                    String value = cache.get(key);
+                    if (null == value) {
+                        cache.put(key, key, cache.generation(key));
+                    } else {
+                        Assertions.assertEquals(key, value);
+                    }
+                    if (n == 0 && i % 100 == 0) {
+                        cache.invalidate(key);
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertTrue(cache.size() <= 1000, "size " + cache.size());
+        Assertions.assertEquals(80000, cache.hits() + cache.misses());
+    }
+
+    @Test
+    void expire() throws InterruptedException {
+        NearCache<String> cache = new NearCache<>(100, TimeUnit.MILLISECONDS.toNanos(10L));
+        cache.put("a", "1", cache.generation("a"));
+        Thread.sleep(20L);
+        Assertions.assertNull(cache.get("a"));
+    }
+
+    @Test
+    void admission() {
+        NearCache<String> cache = new NearCache<>(100, TimeUnit.MINUTES.toNanos(1L));
+        for (int i = 0; i < 100; i++) {
+            String key = "hot-" + i;
+            cache.get(key);
+            cache.put(key, key, cache.generation(key));
+            for (int j = 0; j < 5; j++) {
+                cache.get(key);
+            }
+        }
+        for (int i = 0; i < 1000; i++) {
+            cache.put("cold-" + i, "cold", cache.generation("cold-" + i));
+        }
+        Assertions.assertTrue(cache.size() <= 100);
+        int hot = 0;
+        for (int i = 0; i < 100; i++) {
+            if (null != cache.get("hot-" + i)) {
+                hot++;
+            }
+        }
+        Assertions.assertTrue(hot >= 90, "hot " + hot);
+    }
+
+}
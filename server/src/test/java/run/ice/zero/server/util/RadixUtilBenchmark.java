@@ -0,0 +1,71 @@
+package run.ice.zero.server.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RadixUtil 基准测试：BigInteger 的 convert 与基于 long 的 encode / matches
+ * <p>
+ * mvn -Pjmh test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=run.ice.zero.server.util.RadixUtilBenchmark
+ *
+ * @author DaoDao
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RadixUtilBenchmark {
+
+    private String id;
+
+    private long number;
+
+    private String code;
+
+    @Setup
+    public void setup() {
+        number = new IdGenerator(0).next();
+        id = String.valueOf(number);
+        code = RadixUtil.convert(id, 10, 62);
+    }
+
+    @Benchmark
+    public String convert() {
+        return RadixUtil.convert(id, 10, 62);
+    }
+
+    @Benchmark
+    public String encode() {
+        return RadixUtil.encode(number);
+    }
+
+    @Benchmark
+    public boolean verifyConvert() {
+        return code.equals(RadixUtil.convert(id, 10, 62));
+    }
+
+    @Benchmark
+    public boolean verifyMatches() {
+        return RadixUtil.matches(id, code);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RadixUtilBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,45 @@
+package run.ice.zero.server.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+class RadixUtilTest {
+
+    @Test
+    void encode() {
+        Assertions.assertEquals("0", RadixUtil.encode(0L));
+        for (int i = 0; i < 1000; i++) {
+            long n = ThreadLocalRandom.current().nextLong(1_000_000_000_000_000_000L);
+            String id = String.valueOf(n);
+            String code = RadixUtil.convert(id, 10, 62);
+            Assertions.assertEquals(code, RadixUtil.encode(n));
+            Assertions.assertEquals(n, RadixUtil.decode(code));
+            Assertions.assertTrue(RadixUtil.matches(id, code));
+        }
+        Assertions.assertEquals(RadixUtil.convert(String.valueOf(Long.MAX_VALUE), 10, 62), RadixUtil.encode(Long.MAX_VALUE));
+    }
+
+    @Test
+    void matches() {
+        String id = "202601011200000001";
+        String code = RadixUtil.convert(id, 10, 62);
+        Assertions.assertTrue(RadixUtil.matches(id, code));
+        Assertions.assertTrue(RadixUtil.matches("00" + id.substring(2), RadixUtil.convert("00" + id.substring(2), 10, 62)));
+        Assertions.assertFalse(RadixUtil.matches(id, "0" + code));
+        Assertions.assertFalse(RadixUtil.matches(id, code.substring(1)));
+        Assertions.assertFalse(RadixUtil.matches(id, code.substring(0, code.length() - 1) + "0"));
+        Assertions.assertFalse(RadixUtil.matches("1234567890123456789", "x"));
+        Assertions.assertFalse(RadixUtil.matches("12a", "x"));
+        Assertions.assertFalse(RadixUtil.matches(id, null));
+    }
+
+    @Test
+    void decode() {
+        Assertions.assertEquals(-1L, RadixUtil.decode("a-b"));
+        Assertions.assertEquals(-1L, RadixUtil.decode("zzzzzzzzzzz"));
+        Assertions.assertEquals(-1L, RadixUtil.decode(""));
+    }
+
+}
@@ -0,0 +1,34 @@
+package run.ice.zero.server.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+class TokenBucketTest {
+
+    @Test
+    void reserve() {
+        TokenBucket bucket = new TokenBucket(10, 10);
+        Assertions.assertEquals(0L, bucket.reserve(10));
+        long wait = bucket.reserve(10);
+        Assertions.assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(900) && wait <= TimeUnit.SECONDS.toNanos(1), "wait " + wait);
+    }
+
+    @Test
+    void unlimited() {
+        TokenBucket bucket = new TokenBucket(0, 0);
+        Assertions.assertEquals(0L, bucket.reserve(Long.MAX_VALUE));
+    }
+
+    @Test
+    void rate() {
+        TokenBucket bucket = new TokenBucket(0, 10);
+        Assertions.assertEquals(0L, bucket.reserve(100));
+        bucket.rate(10);
+        Assertions.assertEquals(0L, bucket.reserve(10));
+        long wait = bucket.reserve(10);
+        Assertions.assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(900) && wait <= TimeUnit.SECONDS.toNanos(1), "wait " + wait);
+    }
+
+}